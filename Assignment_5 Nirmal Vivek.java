@@ -13,8 +13,20 @@
  */
 
 import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 class Book {
     private String bookId;
@@ -22,10 +34,10 @@ class Book {
     private String author;
     private String isbn;
     private String category;
-    private boolean isIssued;
-    private LocalDate issueDate;
-    private LocalDate dueDate;
-    private int timesIssued;
+    private final AtomicBoolean isIssued = new AtomicBoolean(false);
+    private volatile LocalDate issueDate;
+    private volatile LocalDate dueDate;
+    private volatile int timesIssued;
 
     public Book(String bookId, String title, String author, String isbn, String category) {
         this.bookId = bookId;
@@ -33,38 +45,64 @@ class Book {
         this.author = author;
         this.isbn = isbn;
         this.category = category;
-        this.isIssued = false;
         this.timesIssued = 0;
     }
 
     public String getBookId() { return bookId; }
     public String getTitle() { return title; }
-    public boolean isIssued() { return isIssued; }
+    public String getAuthor() { return author; }
+    public String getIsbn() { return isbn; }
+    public String getCategory() { return category; }
+    public boolean isIssued() { return isIssued.get(); }
     public LocalDate getDueDate() { return dueDate; }
     public int getTimesIssued() { return timesIssued; }
 
-    public void issueBook(int days) {
-        this.isIssued = true;
+    // Goes through the same CAS as the lending engine; false if the book is already out
+    public boolean issueBook(int days) {
+        return tryIssue(days);
+    }
+
+    // Atomically claims the book; only one caller can win while it is on loan
+    public boolean tryIssue(int days) {
+        if (!isIssued.compareAndSet(false, true)) return false;
+        setLoanDates(days);
+        return true;
+    }
+
+    // Hands a claimed book straight to the next borrower without releasing it
+    public void reissue(int days) {
+        setLoanDates(days);
+    }
+
+    private synchronized void setLoanDates(int days) {
         this.issueDate = LocalDate.now();
         this.dueDate = issueDate.plusDays(days);
         this.timesIssued++;
     }
 
-    public void returnBook() {
-        this.isIssued = false;
+    public synchronized void returnBook() {
         this.issueDate = null;
         this.dueDate = null;
+        isIssued.set(false);
     }
 
-    public void renewBook(int days) {
-        if (isIssued) {
+    public synchronized void renewBook(int days) {
+        if (isIssued.get()) {
             this.dueDate = LocalDate.now().plusDays(days);
         }
     }
 
+    // Used when loading a snapshot
+    synchronized void restoreState(boolean issued, LocalDate due, int timesIssued) {
+        this.isIssued.set(issued);
+        this.issueDate = null;
+        this.dueDate = issued ? due : null;
+        this.timesIssued = timesIssued;
+    }
+
     @Override
     public String toString() {
-        return "[" + bookId + "] " + title + " by " + author + (isIssued ? " (Issued, Due: " + dueDate + ")" : " (Available)");
+        return "[" + bookId + "] " + title + " by " + author + (isIssued.get() ? " (Issued, Due: " + dueDate + ")" : " (Available)");
     }
 }
 
@@ -75,90 +113,260 @@ class Member {
     private List<Book> booksIssued;
     private double totalFines;
     private LocalDate membershipDate;
+    private final int maxBooksAllowed;
+    private final String rateKey; // lower-case member type, the fine rate key
+    private final AtomicInteger loansHeld = new AtomicInteger(0);
 
     // Static variables
     private static int totalMembers = 0;
     private static String libraryName = "Central Library";
     private static double finePerDay = 5.0;
-    private static int maxBooksAllowed = 3; // default
+    private static Map<String, Double> fineRates = new ConcurrentHashMap<>(); // per member type
+    private static DueDateIndex dueDates = new DueDateIndex();
+    private static LendingEngine lending = new LendingEngine(dueDates);
+    private static ScheduledExecutorService fineSweeper;
+    private static ChangeLog changeLog; // null when persistence is off
+    // Shared by every logged change (issue, return, renew, fine sweep) and held exclusively while a
+    // snapshot reads the state, so each change is either in the snapshot or logged after the
+    // change-log position the snapshot records
+    private static final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
 
     public Member(String memberName, String memberType) {
-        this.memberId = "MEM" + String.format("%03d", ++totalMembers);
+        this("MEM" + String.format("%03d", ++totalMembers), memberName, memberType);
+    }
+
+    // Keeps a saved id, so change-log entries keyed by member id still match after a restore
+    private Member(String memberId, String memberName, String memberType) {
+        this.memberId = memberId;
         this.memberName = memberName;
         this.memberType = memberType;
-        this.booksIssued = new ArrayList<>();
+        this.booksIssued = Collections.synchronizedList(new ArrayList<>());
         this.totalFines = 0.0;
         this.membershipDate = LocalDate.now();
+        this.maxBooksAllowed = quotaFor(memberType);
+        this.rateKey = memberType.toLowerCase();
+    }
 
-        // Set borrowing privileges based on type
-        if (memberType.equalsIgnoreCase("Student")) maxBooksAllowed = 3;
-        else if (memberType.equalsIgnoreCase("Faculty")) maxBooksAllowed = 5;
-        else if (memberType.equalsIgnoreCase("General")) maxBooksAllowed = 2;
+    // Borrowing privileges based on member type
+    public static int quotaFor(String memberType) {
+        if (memberType.equalsIgnoreCase("Faculty")) return 5;
+        if (memberType.equalsIgnoreCase("General")) return 2;
+        return 3; // Student and default
     }
 
+    public String getMemberId() { return memberId; }
     public String getMemberName() { return memberName; }
+    public String getMemberType() { return memberType; }
     public double getTotalFines() { return totalFines; }
     public List<Book> getBooksIssued() { return booksIssued; }
+    public int getMaxBooksAllowed() { return maxBooksAllowed; }
+    String getRateKey() { return rateKey; }
 
     public void issueBook(Book book, int days) {
-        if (booksIssued.size() >= maxBooksAllowed) {
-            System.out.println(memberName + " cannot issue more than " + maxBooksAllowed + " books.");
-            return;
-        }
-        if (book.isIssued()) {
-            System.out.println("Book already issued: " + book.getTitle());
-            return;
+        switch (lending.issue(this, book, days)) {
+            case QUOTA_EXCEEDED:
+                System.out.println(memberName + " cannot issue more than " + maxBooksAllowed + " books.");
+                break;
+            case ALREADY_ISSUED:
+                System.out.println("Book already issued: " + book.getTitle());
+                break;
+            default:
+                System.out.println(memberName + " issued book: " + book.getTitle());
         }
-        book.issueBook(days);
-        booksIssued.add(book);
-        System.out.println(memberName + " issued book: " + book.getTitle());
     }
 
     public void returnBook(Book book) {
-        if (!booksIssued.contains(book)) {
+        if (lending.returnBook(this, book) == LendingEngine.Result.NOT_BORROWED) {
             System.out.println(memberName + " has not issued this book.");
             return;
         }
-        calculateFine(book);
-        book.returnBook();
-        booksIssued.remove(book);
         System.out.println(memberName + " returned book: " + book.getTitle());
     }
 
+    // ---------- Quota (used by LendingEngine) ----------
+    boolean reserveQuota() {
+        while (true) {
+            int held = loansHeld.get();
+            if (held >= maxBooksAllowed) return false;
+            if (loansHeld.compareAndSet(held, held + 1)) return true;
+        }
+    }
+
+    void releaseQuota() {
+        loansHeld.decrementAndGet();
+    }
+
     public void renewBook(Book book, int days) {
-        if (booksIssued.contains(book)) {
+        Lock lock = changeLock();
+        lock.lock();
+        try {
+            if (!booksIssued.contains(book)) return;
             book.renewBook(days);
-            System.out.println(memberName + " renewed book: " + book.getTitle());
+            dueDates.update(book);
+            log(ChangeLog.RENEW, this, book, book.getDueDate().toEpochDay(), 0);
+        } finally {
+            lock.unlock();
         }
+        System.out.println(memberName + " renewed book: " + book.getTitle());
     }
 
-    private void calculateFine(Book book) {
-        if (book.getDueDate() != null && LocalDate.now().isAfter(book.getDueDate())) {
-            long overdueDays = Duration.between(book.getDueDate().atStartOfDay(), LocalDate.now().atStartOfDay()).toDays();
-            double fine = overdueDays * finePerDay;
-            totalFines += fine;
+    // Charges only the overdue days the fine sweep has not charged yet
+    void calculateFine(Book book) {
+        LocalDate today = LocalDate.now();
+        long overdueDays = dueDates.takeUnchargedDays(book, today);
+        if (overdueDays > 0) {
+            double fine = overdueDays * getFinePerDay();
+            addFine(fine, book, today.toEpochDay());
             System.out.println("Fine for " + memberName + ": Rs." + fine + " (Overdue " + overdueDays + " days)");
         }
     }
 
+    // Fine rate for this member's type, falling back to the library default
+    public double getFinePerDay() {
+        return fineRateFor(rateKey);
+    }
+
+    static double fineRateFor(String rateKey) {
+        return fineRates.getOrDefault(rateKey, finePerDay);
+    }
+
+    // book is null when the fine covers all the member's loans (fine sweep);
+    // chargedThroughDay is the day the charged loans are now paid up to
+    synchronized void addFine(double fine, Book book, long chargedThroughDay) {
+        totalFines += fine;
+        log(ChangeLog.FINE, this, book, chargedThroughDay, fine);
+    }
+
+    // ---------- Persistence ----------
+    public static void setChangeLog(ChangeLog log) { changeLog = log; }
+
+    static Lock changeLock() { return stateLock.readLock(); }
+    static Lock snapshotLock() { return stateLock.writeLock(); }
+
+    static void log(byte type, Member member, Book book, long day, double amount) {
+        ChangeLog log = changeLog;
+        if (log != null) log.append(type, member, book, day, amount);
+    }
+
+    // Member loaded from a snapshot; later new members are numbered after it
+    static Member restore(String memberId, String memberName, String memberType) {
+        Member m = new Member(memberId, memberName, memberType);
+        synchronized (Member.class) {
+            totalMembers = Math.max(totalMembers, idNumber(memberId));
+        }
+        return m;
+    }
+
+    private static int idNumber(String memberId) {
+        try {
+            return Integer.parseInt(memberId.substring(3));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    // Last day already charged as a fine for this loan, or -1 if the book is not on loan
+    static long chargedThroughDay(Book book) {
+        return dueDates.chargedThroughDay(book);
+    }
+
+    // Re-links a loan loaded from a snapshot or the change log (the book is already marked issued)
+    void restoreLoan(Book book, long chargedThroughDay) {
+        // The loan existed, so count it even if the quota has since been lowered;
+        // otherwise the eventual return would release a slot that was never taken
+        if (!reserveQuota()) loansHeld.incrementAndGet();
+        dueDates.add(book, this, chargedThroughDay);
+        booksIssued.add(book);
+    }
+
+    void restoreFines(double fines) {
+        synchronized (this) { totalFines = fines; }
+    }
+
+    // ---------- Change-log replay (no new log entries are written) ----------
+    void replayIssue(Book book, long dueDay) {
+        book.restoreState(true, LocalDate.ofEpochDay(dueDay), book.getTimesIssued() + 1);
+        restoreLoan(book, dueDay);
+    }
+
+    void replayReturn(Book book) {
+        if (!booksIssued.remove(book)) return;
+        dueDates.remove(book);
+        releaseQuota();
+        book.returnBook();
+    }
+
+    void replayRenew(Book book, long dueDay) {
+        if (!booksIssued.contains(book)) return;
+        book.restoreState(true, LocalDate.ofEpochDay(dueDay), book.getTimesIssued());
+        dueDates.update(book);
+    }
+
+    void replayFine(double amount, Book book, long chargedThroughDay) {
+        synchronized (this) { totalFines += amount; }
+        if (book != null) {
+            dueDates.markCharged(book, chargedThroughDay);
+            return;
+        }
+        synchronized (booksIssued) {
+            for (Book b : booksIssued) dueDates.markCharged(b, chargedThroughDay);
+        }
+    }
+
     public static void searchBooks(List<Book> catalog, String keyword) {
         System.out.println("Search Results for \"" + keyword + "\":");
+        for (Book b : scanBooks(catalog, keyword)) {
+            System.out.println(b);
+        }
+    }
+
+    // Search using the catalog index (ranked, paged)
+    public static void searchBooks(CatalogIndex index, String keyword, int page, int pageSize) {
+        System.out.println("Search Results for \"" + keyword + "\" (page " + page + "):");
+        for (Book b : index.search(keyword, page, pageSize)) {
+            System.out.println(b);
+        }
+    }
+
+    // Full catalog scan, kept as the reference implementation for the index
+    public static List<Book> scanBooks(List<Book> catalog, String keyword) {
+        List<Book> result = new ArrayList<>();
         for (Book b : catalog) {
             if (b.getTitle().toLowerCase().contains(keyword.toLowerCase()) ||
                 b.getBookId().equalsIgnoreCase(keyword)) {
-                System.out.println(b);
+                result.add(b);
             }
         }
+        return result;
     }
 
-    public static void reserveBook(Book book) {
-        if (book.isIssued()) {
-            System.out.println("Book " + book.getTitle() + " reserved. Will notify when available.");
-        } else {
-            System.out.println("Book is available, no need to reserve.");
+    public void reserveBook(Book book) {
+        switch (lending.getHolds().placeHold(this, book, LocalDate.now())) {
+            case PLACED:
+                System.out.println("Book " + book.getTitle() + " reserved for " + memberName +
+                        " (position " + lending.getHolds().countHolds(book) + "). Will notify when available.");
+                break;
+            case DUPLICATE:
+                System.out.println(memberName + " already has a hold on " + book.getTitle());
+                break;
+            case ALREADY_BORROWED:
+                System.out.println(memberName + " already has " + book.getTitle() + " on loan.");
+                break;
+            default:
+                System.out.println("Book is available, no need to reserve.");
         }
     }
 
+    public void cancelReservation(Book book) {
+        if (lending.getHolds().cancelHold(this, book)) {
+            System.out.println(memberName + " cancelled hold on " + book.getTitle());
+        }
+    }
+
+    public static void addHoldListener(HoldQueues.Listener listener) {
+        lending.getHolds().addListener(listener);
+    }
+
     // ---------- Static Reports ----------
     public static void generateLibraryReport(List<Book> catalog, List<Member> members) {
         System.out.println("\n--- Library Report (" + libraryName + ") ---");
@@ -171,37 +379,1377 @@ class Member {
         }
 
         System.out.println("\nMost Popular Books:");
-        getMostPopularBooks(catalog, 3);
+        getMostPopularBooks(PopularityTracker.Window.ALL_TIME, 3);
         System.out.println("------------------------------\n");
     }
 
-    public static void getOverdueBooks(List<Book> catalog) {
+    // Uses the due-date index, so the cost depends on the number of overdue books
+    public static void getOverdueBooks() {
         System.out.println("\n--- Overdue Books ---");
-        LocalDate today = LocalDate.now();
-        for (Book b : catalog) {
-            if (b.isIssued() && b.getDueDate().isBefore(today)) {
-                System.out.println(b);
-            }
+        for (Book b : dueDates.getOverdue(LocalDate.now())) {
+            System.out.println(b);
+        }
+    }
+
+    // ---------- Fine Sweep ----------
+    // Charges fines for every day each overdue loan has passed its due date, up to today
+    public static void runFineSweep(LocalDate today) {
+        int charged;
+        Lock lock = changeLock();
+        lock.lock();
+        try {
+            charged = dueDates.sweep(today);
+        } finally {
+            lock.unlock();
         }
+        System.out.println("Fine sweep for " + today + ": charged " + charged + " overdue loans.");
+    }
+
+    // Fines that would be charged if the sweep ran today, without posting them
+    public static Map<Member, Double> getOutstandingFines(LocalDate today) {
+        return dueDates.outstandingFines(today);
     }
 
-    public static void getMostPopularBooks(List<Book> catalog, int top) {
-        catalog.stream()
-                .sorted((b1, b2) -> Integer.compare(b2.getTimesIssued(), b1.getTimesIssued()))
-                .limit(top)
-                .forEach(b -> System.out.println(b.getTitle() + " (Issued " + b.getTimesIssued() + " times)"));
+    public static synchronized void startFineSweep() {
+        if (fineSweeper != null) return;
+        fineSweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fine-sweep");
+            t.setDaemon(true);
+            return t;
+        });
+        long untilMidnight = Duration.between(LocalDateTime.now(), LocalDate.now().plusDays(1).atStartOfDay()).toMillis();
+        fineSweeper.scheduleAtFixedRate(() -> runFineSweep(LocalDate.now()),
+                untilMidnight, TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void stopFineSweep() {
+        if (fineSweeper != null) {
+            fineSweeper.shutdown();
+            fineSweeper = null;
+        }
+    }
+
+    // Stops the background threads (fine sweep and hold notifier)
+    public static void shutdown() {
+        stopFineSweep();
+        lending.shutdown();
+    }
+
+    // Served from the popularity sketches, so the catalog is never sorted
+    public static void getMostPopularBooks(PopularityTracker.Window window, int top) {
+        for (Map.Entry<Book, Double> e : lending.getPopularity().top(window, top, LocalDate.now())) {
+            System.out.println(e.getKey().getTitle() + " (Score " + String.format("%.1f", e.getValue()) + ")");
+        }
     }
 
     // ---------- Static Config ----------
     public static void setFinePerDay(double fine) { finePerDay = fine; }
+    public static void setFinePerDay(String memberType, double fine) { fineRates.put(memberType.toLowerCase(), fine); }
     public static void setLibraryName(String name) { libraryName = name; }
 }
 
+/**
+ * Growable list of primitive ints (used for index postings).
+ */
+class IntList {
+    private int[] data = new int[4];
+    private int size = 0;
+
+    public void add(int value) {
+        if (size == data.length) data = Arrays.copyOf(data, size * 2);
+        data[size++] = value;
+    }
+
+    public int get(int i) { return data[i]; }
+    public void set(int i, int value) { data[i] = value; }
+    public int size() { return size; }
+    public int last() { return data[size - 1]; }
+    public int removeLast() { return data[--size]; }
+    public void clear() { size = 0; }
+}
+
+/**
+ * Lending engine: issues and returns books atomically.
+ * A book is claimed with a CAS on its issued flag and the member's own quota is
+ * reserved with a CAS on their loan counter, so concurrent branches can never
+ * issue the same book twice or push a member over their limit.
+ */
+class LendingEngine {
+    public enum Result { ISSUED, QUOTA_EXCEEDED, ALREADY_ISSUED, RETURNED, NOT_BORROWED }
+
+    public static final int DEFAULT_LOAN_DAYS = 14;
+
+    private final DueDateIndex dueDates;
+    private final HoldQueues holds = new HoldQueues();
+    private final PopularityTracker popularity = new PopularityTracker();
+
+    public LendingEngine(DueDateIndex dueDates) {
+        this.dueDates = dueDates;
+    }
+
+    public HoldQueues getHolds() { return holds; }
+    public PopularityTracker getPopularity() { return popularity; }
+
+    // Delivers pending hold notifications and stops the notifier thread
+    public void shutdown() {
+        holds.shutdown();
+    }
+
+    public Result issue(Member member, Book book, int days) {
+        Lock lock = Member.changeLock();
+        lock.lock();
+        try {
+            return issueLocked(member, book, days);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Result returnBook(Member member, Book book) {
+        Lock lock = Member.changeLock();
+        lock.lock();
+        try {
+            return returnLocked(member, book);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Result issueLocked(Member member, Book book, int days) {
+        if (!member.reserveQuota()) return Result.QUOTA_EXCEEDED;
+        if (!book.tryIssue(days)) {
+            member.releaseQuota();
+            return Result.ALREADY_ISSUED;
+        }
+        dueDates.add(book, member);
+        member.getBooksIssued().add(book);
+        popularity.record(book, LocalDate.now());
+        Member.log(ChangeLog.ISSUE, member, book, book.getDueDate().toEpochDay(), 0);
+        return Result.ISSUED;
+    }
+
+    private Result returnLocked(Member member, Book book) {
+        // Removing the loan first means only one concurrent return can succeed
+        if (!member.getBooksIssued().remove(book)) return Result.NOT_BORROWED;
+        member.calculateFine(book);
+        dueDates.remove(book);
+        member.releaseQuota();
+        Member.log(ChangeLog.RETURN, member, book, LocalDate.now().toEpochDay(), 0);
+
+        // Hand the book to the next hold, or release it if nobody is waiting.
+        // Both happen under the book's hold lock so a new hold cannot be missed.
+        synchronized (holds.lockFor(book)) {
+            // Holders at their limit are skipped but keep their place in the queue
+            Member next = holds.pollNext(book, LocalDate.now(), Member::reserveQuota);
+            if (next == null) {
+                book.returnBook();
+            } else {
+                book.reissue(DEFAULT_LOAN_DAYS);
+                dueDates.add(book, next);
+                next.getBooksIssued().add(book);
+                popularity.record(book, LocalDate.now());
+                Member.log(ChangeLog.ISSUE, next, book, book.getDueDate().toEpochDay(), 0);
+                holds.publishFilled(next, book);
+            }
+        }
+        return Result.RETURNED;
+    }
+}
+
+/**
+ * Per-book FIFO hold queues.
+ * Cancelled and expired holds are only flagged and get skipped lazily when the
+ * queue is polled, so cancel is O(1). Locking is striped by book so returns
+ * and reservations on different titles never contend.
+ */
+class HoldQueues {
+    public enum Result { PLACED, AVAILABLE, DUPLICATE, ALREADY_BORROWED }
+
+    // Notified when a returned book is handed to the next hold
+    public interface Listener {
+        void onHoldFilled(Member member, Book book);
+
+        default void onHoldSkipped(Member member, Book book) { }
+    }
+
+    private static final int STRIPES = 64;
+    public static int holdDays = 30; // holds expire after this many days
+
+    private static class Hold {
+        final Member member;
+        final long expiresDay;
+        boolean cancelled;
+
+        Hold(Member member, long expiresDay) {
+            this.member = member;
+            this.expiresDay = expiresDay;
+        }
+    }
+
+    private static class Queue {
+        final ArrayDeque<Hold> holds = new ArrayDeque<>();
+        final Map<Member, Hold> byMember = new HashMap<>();
+    }
+
+    private final Object[] locks = new Object[STRIPES];
+    private final Map<Book, Queue> queues = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private ExecutorService notifier; // started with the first listener
+
+    public HoldQueues() {
+        for (int i = 0; i < STRIPES; i++) locks[i] = new Object();
+    }
+
+    public synchronized void addListener(Listener listener) {
+        if (notifier == null) {
+            notifier = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "hold-notifier");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        listeners.add(listener);
+    }
+
+    public void shutdown() {
+        ExecutorService n;
+        synchronized (this) {
+            n = notifier;
+            notifier = null;
+            listeners.clear();
+        }
+        if (n == null) return;
+        n.shutdown();
+        try {
+            n.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    Object lockFor(Book book) {
+        return locks[(book.hashCode() & 0x7fffffff) % STRIPES];
+    }
+
+    public Result placeHold(Member member, Book book, LocalDate today) {
+        synchronized (lockFor(book)) {
+            if (!book.isIssued()) return Result.AVAILABLE;
+            if (member.getBooksIssued().contains(book)) return Result.ALREADY_BORROWED;
+            Queue queue = queues.computeIfAbsent(book, b -> new Queue());
+            if (queue.byMember.containsKey(member)) return Result.DUPLICATE;
+            Hold hold = new Hold(member, today.toEpochDay() + holdDays);
+            queue.holds.addLast(hold);
+            queue.byMember.put(member, hold);
+            return Result.PLACED;
+        }
+    }
+
+    public boolean cancelHold(Member member, Book book) {
+        synchronized (lockFor(book)) {
+            Queue queue = queues.get(book);
+            if (queue == null) return false;
+            Hold hold = queue.byMember.remove(member);
+            if (hold == null) return false;
+            hold.cancelled = true;
+            if (queue.byMember.isEmpty()) queues.remove(book);
+            return true;
+        }
+    }
+
+    public int countHolds(Book book) {
+        return countHolds(book, LocalDate.now());
+    }
+
+    // Live holds only; expired ones still queued until the next poll are not counted
+    public int countHolds(Book book, LocalDate today) {
+        synchronized (lockFor(book)) {
+            Queue queue = queues.get(book);
+            if (queue == null) return 0;
+            long day = today.toEpochDay();
+            int live = 0;
+            for (Hold hold : queue.holds) {
+                if (!hold.cancelled && hold.expiresDay >= day) live++;
+            }
+            return live;
+        }
+    }
+
+    // First live hold whose member passes the check, or null. Expired and cancelled
+    // holds are dropped; holds that fail the check keep their place for the next copy.
+    Member pollNext(Book book, LocalDate today, Predicate<Member> eligible) {
+        synchronized (lockFor(book)) {
+            Queue queue = queues.get(book);
+            if (queue == null) return null;
+            long day = today.toEpochDay();
+            Member next = null;
+            Iterator<Hold> it = queue.holds.iterator();
+            while (next == null && it.hasNext()) {
+                Hold hold = it.next();
+                if (hold.cancelled) {
+                    it.remove();
+                } else if (hold.expiresDay < day) {
+                    it.remove();
+                    queue.byMember.remove(hold.member);
+                } else if (eligible.test(hold.member)) {
+                    it.remove();
+                    queue.byMember.remove(hold.member);
+                    next = hold.member;
+                } else {
+                    publishSkipped(hold.member, book);
+                }
+            }
+            if (queue.byMember.isEmpty()) queues.remove(book);
+            return next;
+        }
+    }
+
+    void publishFilled(Member member, Book book) {
+        ExecutorService n = notifier();
+        if (n == null) return;
+        for (Listener l : listeners) n.execute(() -> l.onHoldFilled(member, book));
+    }
+
+    void publishSkipped(Member member, Book book) {
+        ExecutorService n = notifier();
+        if (n == null) return;
+        for (Listener l : listeners) n.execute(() -> l.onHoldSkipped(member, book));
+    }
+
+    private synchronized ExecutorService notifier() { return notifier; }
+}
+
+/**
+ * Popularity ranking over book issues.
+ * Each window keeps a Space-Saving sketch of bounded size. The week and month
+ * windows use exponentially decayed counts (forward decay: newer issues get a
+ * bigger weight instead of older counters being shrunk), and all-time counts
+ * plain issues. Books are split by hash over striped sketches, each with its
+ * own lock, so issues of different books rarely contend.
+ */
+class PopularityTracker {
+    public enum Window {
+        WEEK(7), MONTH(30), ALL_TIME(0);
+
+        final double halfLifeDays;
+
+        Window(double halfLifeDays) { this.halfLifeDays = halfLifeDays; }
+    }
+
+    public static final int DEFAULT_SKETCH_CAPACITY = 1000; // books tracked per window
+    private static final int STRIPES = 16;
+
+    private final SpaceSaving[][] stripes = new SpaceSaving[STRIPES][];
+
+    public PopularityTracker() {
+        this(DEFAULT_SKETCH_CAPACITY);
+    }
+
+    public PopularityTracker(int sketchCapacity) {
+        int perStripe = Math.max(1, (sketchCapacity + STRIPES - 1) / STRIPES);
+        Window[] windows = Window.values();
+        for (int s = 0; s < STRIPES; s++) {
+            stripes[s] = new SpaceSaving[windows.length];
+            for (Window w : windows) stripes[s][w.ordinal()] = new SpaceSaving(perStripe, w.halfLifeDays);
+        }
+    }
+
+    public void record(Book book, LocalDate day) {
+        SpaceSaving[] stripe = stripes[(book.hashCode() & 0x7fffffff) % STRIPES];
+        long epochDay = day.toEpochDay();
+        synchronized (stripe) {
+            for (SpaceSaving sketch : stripe) sketch.add(book, epochDay);
+        }
+    }
+
+    // Top books with their (approximate, decayed) issue counts, highest first
+    public List<Map.Entry<Book, Double>> top(Window window, int k, LocalDate day) {
+        if (k <= 0) return new ArrayList<>();
+        // Bounded min-heap: the root is the weakest of the best k seen so far
+        PriorityQueue<Map.Entry<Book, Double>> best = new PriorityQueue<>(k, Map.Entry.comparingByValue());
+        long epochDay = day.toEpochDay();
+        for (SpaceSaving[] stripe : stripes) {
+            synchronized (stripe) {
+                stripe[window.ordinal()].offerTop(best, k, epochDay);
+            }
+        }
+        List<Map.Entry<Book, Double>> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) result.add(best.poll());
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Space-Saving heavy hitters with an indexed min-heap on the counts.
+     * When full, a new book replaces the smallest counter and inherits its count.
+     */
+    private static class SpaceSaving {
+        private static final double RESCALE_LIMIT = 1e12;
+
+        private final Book[] items;
+        private final double[] counts;
+        private final Map<Book, Integer> position = new HashMap<>();
+        private final double lambda; // decay rate per day, 0 for no decay
+        private double landmarkDay;
+        private int size = 0;
+
+        SpaceSaving(int capacity, double halfLifeDays) {
+            this.items = new Book[capacity];
+            this.counts = new double[capacity];
+            this.lambda = halfLifeDays > 0 ? Math.log(2) / halfLifeDays : 0;
+        }
+
+        void add(Book book, long day) {
+            if (size == 0) landmarkDay = day;
+            double weight = Math.exp(lambda * (day - landmarkDay));
+            if (weight > RESCALE_LIMIT) {
+                for (int i = 0; i < size; i++) counts[i] /= weight;
+                landmarkDay = day;
+                weight = 1;
+            }
+
+            Integer i = position.get(book);
+            if (i != null) {
+                counts[i] += weight;
+                siftDown(i);
+            } else if (size < items.length) {
+                items[size] = book;
+                counts[size] = weight;
+                position.put(book, size);
+                siftUp(size++);
+            } else {
+                position.remove(items[0]);
+                items[0] = book;
+                counts[0] += weight;
+                position.put(book, 0);
+                siftDown(0);
+            }
+        }
+
+        // Offers every counter to a bounded heap of the best k, scaled to the given day
+        void offerTop(PriorityQueue<Map.Entry<Book, Double>> best, int k, long day) {
+            double scale = Math.exp(-lambda * (day - landmarkDay));
+            for (int i = 0; i < size; i++) {
+                double score = counts[i] * scale;
+                if (best.size() == k) {
+                    if (score <= best.peek().getValue()) continue;
+                    best.poll();
+                }
+                best.add(new AbstractMap.SimpleEntry<>(items[i], score));
+            }
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (counts[parent] <= counts[i]) break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int smallest = i;
+                int left = 2 * i + 1, right = left + 1;
+                if (left < size && counts[left] < counts[smallest]) smallest = left;
+                if (right < size && counts[right] < counts[smallest]) smallest = right;
+                if (smallest == i) return;
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            Book tb = items[a]; items[a] = items[b]; items[b] = tb;
+            double tc = counts[a]; counts[a] = counts[b]; counts[b] = tc;
+            position.put(items[a], a);
+            position.put(items[b], b);
+        }
+    }
+}
+
+/**
+ * Fine accrual over open loans stored as primitive columns.
+ * Rates are kept per member type, resolved once per pass, so accrue() is a
+ * single pass over epoch-day arrays with no objects, then a second pass that
+ * sums the fines per member so they can be posted in bulk.
+ */
+class FineEngine {
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    // Column store; a free slot has chargedThroughDay = Long.MAX_VALUE so it never accrues
+    public static class LoanBatch {
+        long[] chargedThroughDay; // due day, or the last day already charged
+        int[] typeSlot;
+        int[] memberSlot;
+        double[] fine;
+        int size = 0;
+
+        public LoanBatch(int capacity) {
+            capacity = Math.max(capacity, 16);
+            chargedThroughDay = new long[capacity];
+            typeSlot = new int[capacity];
+            memberSlot = new int[capacity];
+            fine = new double[capacity];
+        }
+
+        public int add(long chargedThrough, int type, int member) {
+            if (size == chargedThroughDay.length) grow();
+            chargedThroughDay[size] = chargedThrough;
+            typeSlot[size] = type;
+            memberSlot[size] = member;
+            return size++;
+        }
+
+        private void grow() {
+            int capacity = chargedThroughDay.length * 2;
+            chargedThroughDay = Arrays.copyOf(chargedThroughDay, capacity);
+            typeSlot = Arrays.copyOf(typeSlot, capacity);
+            memberSlot = Arrays.copyOf(memberSlot, capacity);
+            fine = Arrays.copyOf(fine, capacity);
+        }
+    }
+
+    // Fills batch.fine for each loan and returns the total per member slot
+    public static double[] accrue(LoanBatch batch, double[] typeRate, long today, int memberCount) {
+        long[] charged = batch.chargedThroughDay;
+        int[] type = batch.typeSlot;
+        double[] fine = batch.fine;
+        int n = batch.size;
+        if (n >= PARALLEL_THRESHOLD) {
+            IntStream.range(0, n).parallel().forEach(i -> fine[i] = Math.max(0, today - charged[i]) * typeRate[type[i]]);
+        } else {
+            for (int i = 0; i < n; i++) {
+                fine[i] = Math.max(0, today - charged[i]) * typeRate[type[i]];
+            }
+        }
+
+        double[] totals = new double[memberCount];
+        int[] slot = batch.memberSlot;
+        for (int i = 0; i < n; i++) {
+            totals[slot[i]] += fine[i];
+        }
+        return totals;
+    }
+}
+
+/**
+ * Open loans indexed by book, with due and charged-through days (epoch-day)
+ * kept in primitive columns. Member.issueBook, renewBook and returnBook keep it
+ * current, and the fine sweep is one pass over the columns with no Loan objects
+ * or per-loan map lookups. Slots are also bucketed by due day in a TreeMap, so
+ * the overdue list is read off its head without a scan or a sort.
+ */
+class DueDateIndex {
+    private static final long FREE = Long.MAX_VALUE;
+
+    // Open loans live in FineEngine columns; books and due days sit beside them by slot
+    private final FineEngine.LoanBatch columns = new FineEngine.LoanBatch(16);
+    private Book[] books = new Book[16];
+    private long[] dueDay = new long[16];
+    private final IntList freeSlots = new IntList();
+    private final Map<Book, Integer> slots = new HashMap<>();
+    private final TreeMap<Long, IntList> byDueDay = new TreeMap<>(); // due day -> slots due that day
+    private int[] duePos = new int[16];                               // slot's position in its day's list
+
+    private final List<Member> members = new ArrayList<>();
+    private final Map<Member, Integer> memberSlots = new HashMap<>();
+    private final List<String> types = new ArrayList<>();
+    private final Map<String, Integer> typeSlots = new HashMap<>();
+
+    public synchronized void add(Book book, Member member) {
+        long due = book.getDueDate().toEpochDay();
+        add(book, member, due);
+    }
+
+    // Loan restored from a snapshot or log, with the day it was already charged through
+    public synchronized void add(Book book, Member member, long chargedThroughDay) {
+        long due = book.getDueDate().toEpochDay();
+        int owner = memberSlots.computeIfAbsent(member, m -> {
+            members.add(m);
+            return members.size() - 1;
+        });
+        int type = typeSlots.computeIfAbsent(member.getRateKey(), t -> {
+            types.add(t);
+            return types.size() - 1;
+        });
+
+        Integer existing = slots.get(book);
+        int slot;
+        if (existing != null) {
+            slot = existing;
+            unlinkDue(slot);
+        } else if (freeSlots.size() > 0) {
+            slot = freeSlots.removeLast();
+        } else {
+            slot = columns.add(FREE, 0, 0);
+            if (slot == books.length) {
+                books = Arrays.copyOf(books, slot * 2);
+                dueDay = Arrays.copyOf(dueDay, slot * 2);
+                duePos = Arrays.copyOf(duePos, slot * 2);
+            }
+        }
+        books[slot] = book;
+        dueDay[slot] = due;
+        linkDue(slot);
+        columns.chargedThroughDay[slot] = Math.max(due, chargedThroughDay);
+        columns.typeSlot[slot] = type;
+        columns.memberSlot[slot] = owner;
+        slots.put(book, slot);
+    }
+
+    public synchronized void update(Book book) {
+        Integer slot = slots.get(book);
+        if (slot == null || book.getDueDate() == null) return;
+        unlinkDue(slot);
+        dueDay[slot] = book.getDueDate().toEpochDay();
+        linkDue(slot);
+        columns.chargedThroughDay[slot] = Math.max(columns.chargedThroughDay[slot], dueDay[slot]);
+    }
+
+    public synchronized void remove(Book book) {
+        Integer slot = slots.remove(book);
+        if (slot == null) return;
+        unlinkDue(slot);
+        books[slot] = null;
+        dueDay[slot] = FREE;
+        columns.chargedThroughDay[slot] = FREE;
+        freeSlots.add(slot);
+    }
+
+    public synchronized int size() { return slots.size(); }
+
+    public synchronized long chargedThroughDay(Book book) {
+        Integer slot = slots.get(book);
+        return slot == null ? -1 : columns.chargedThroughDay[slot];
+    }
+
+    public synchronized void markCharged(Book book, long day) {
+        Integer slot = slots.get(book);
+        if (slot != null) columns.chargedThroughDay[slot] = Math.max(columns.chargedThroughDay[slot], day);
+    }
+
+    // Books whose due date is before today, earliest first; O(log d + overdue) for d distinct due days
+    public synchronized List<Book> getOverdue(LocalDate today) {
+        List<Book> result = new ArrayList<>();
+        for (IntList due : byDueDay.headMap(today.toEpochDay()).values()) {
+            for (int i = 0; i < due.size(); i++) result.add(books[due.get(i)]);
+        }
+        return result;
+    }
+
+    private void linkDue(int slot) {
+        IntList due = byDueDay.computeIfAbsent(dueDay[slot], d -> new IntList());
+        duePos[slot] = due.size();
+        due.add(slot);
+    }
+
+    // Swap-removes the slot from its day's list
+    private void unlinkDue(int slot) {
+        IntList due = byDueDay.get(dueDay[slot]);
+        int last = due.removeLast();
+        if (last != slot) {
+            due.set(duePos[slot], last);
+            duePos[last] = duePos[slot];
+        }
+        if (due.size() == 0) byDueDay.remove(dueDay[slot]);
+    }
+
+    // Overdue days of this loan not yet charged; marks them as charged
+    public synchronized long takeUnchargedDays(Book book, LocalDate today) {
+        Integer slot = slots.get(book);
+        if (slot == null) return 0;
+        long days = today.toEpochDay() - columns.chargedThroughDay[slot];
+        if (days <= 0) return 0;
+        columns.chargedThroughDay[slot] = today.toEpochDay();
+        return days;
+    }
+
+    // Charges each overdue loan for the days passed since it was last charged.
+    // Fines are computed by FineEngine in one pass and posted once per member.
+    public synchronized int sweep(LocalDate today) {
+        long day = today.toEpochDay();
+        double[] totals = accrue(day);
+
+        int charged = 0;
+        for (int i = 0; i < columns.size; i++) {
+            if (columns.fine[i] > 0) {
+                columns.chargedThroughDay[i] = day;
+                charged++;
+            }
+        }
+        for (int m = 0; m < members.size(); m++) {
+            if (totals[m] > 0) members.get(m).addFine(totals[m], null, day);
+        }
+        return charged;
+    }
+
+    public synchronized Map<Member, Double> outstandingFines(LocalDate today) {
+        double[] totals = accrue(today.toEpochDay());
+        Map<Member, Double> result = new LinkedHashMap<>();
+        for (int m = 0; m < members.size(); m++) {
+            if (totals[m] > 0) result.put(members.get(m), totals[m]);
+        }
+        return result;
+    }
+
+    // Resolves the rate of each member type once, then runs FineEngine over the columns
+    private double[] accrue(long day) {
+        double[] typeRate = new double[types.size()];
+        for (int t = 0; t < typeRate.length; t++) typeRate[t] = Member.fineRateFor(types.get(t));
+        return FineEngine.accrue(columns, typeRate, day, members.size());
+    }
+}
+
+/**
+ * Catalog search index over Book.
+ * Titles and authors are normalized once when a book is added, then indexed by
+ * whole tokens and by character trigrams. Queries too short for a trigram
+ * match tokens that start with them, through a sorted set of the tokens.
+ * bookId and isbn have exact-match hash indexes, and category is kept as a
+ * facet.
+ */
+class CatalogIndex {
+    // Scores used for ranking
+    private static final int SCORE_EXACT_ID = 100;
+    private static final int SCORE_TITLE_TOKEN = 10;
+    private static final int SCORE_AUTHOR_TOKEN = 6;
+    private static final int SCORE_TITLE_SUBSTRING = 3;
+    private static final int SCORE_AUTHOR_SUBSTRING = 2;
+
+    private final List<Book> books = new ArrayList<>();
+    private final List<String> normTitles = new ArrayList<>();
+    private final List<String> normAuthors = new ArrayList<>();
+
+    private final Map<String, Integer> byBookId = new HashMap<>();
+    private final Map<String, Integer> byIsbn = new HashMap<>();
+    private final Map<String, IntList> byCategory = new HashMap<>();
+    private final Map<String, IntList> titleTokens = new HashMap<>();
+    private final Map<String, IntList> authorTokens = new HashMap<>();
+    private final NavigableSet<String> titleTokenKeys = new TreeSet<>();
+    private final NavigableSet<String> authorTokenKeys = new TreeSet<>();
+    private final Map<String, IntList> titleGrams = new HashMap<>();
+    private final Map<String, IntList> authorGrams = new HashMap<>();
+
+    // Per-thread score accumulator, indexed by doc so scoring never boxes
+    private final ThreadLocal<Scores> scratch = ThreadLocal.withInitial(Scores::new);
+
+    public CatalogIndex() { }
+
+    public CatalogIndex(List<Book> catalog) {
+        for (Book b : catalog) addBook(b);
+    }
+
+    public void addBook(Book book) {
+        int doc = books.size();
+        String title = normalize(book.getTitle());
+        String author = normalize(book.getAuthor());
+        books.add(book);
+        normTitles.add(title);
+        normAuthors.add(author);
+
+        byBookId.put(normalize(book.getBookId()), doc);
+        if (book.getIsbn() != null) byIsbn.put(normalize(book.getIsbn()), doc);
+        if (book.getCategory() != null) post(byCategory, normalize(book.getCategory()), doc);
+
+        indexText(title, doc, titleTokens, titleTokenKeys, titleGrams);
+        indexText(author, doc, authorTokens, authorTokenKeys, authorGrams);
+    }
+
+    public int size() { return books.size(); }
+
+    public Book findById(String bookId) {
+        Integer doc = byBookId.get(normalize(bookId));
+        return doc == null ? null : books.get(doc);
+    }
+
+    public Book findByIsbn(String isbn) {
+        Integer doc = byIsbn.get(normalize(isbn));
+        return doc == null ? null : books.get(doc);
+    }
+
+    public List<Book> getByCategory(String category, int page, int pageSize) {
+        IntList docs = byCategory.get(normalize(category));
+        List<Book> result = new ArrayList<>();
+        if (docs == null) return result;
+        int from = page * pageSize;
+        int to = Math.min(docs.size(), from + pageSize);
+        for (int i = from; i < to; i++) result.add(books.get(docs.get(i)));
+        return result;
+    }
+
+    // Ranked search over id, isbn, title and author. page is zero-based.
+    public List<Book> search(String keyword, int page, int pageSize) {
+        String query = normalize(keyword);
+        List<Book> result = new ArrayList<>();
+        if (query.isEmpty() || page < 0 || pageSize <= 0) return result;
+
+        Scores scores = scratch.get();
+        scores.reset(books.size());
+
+        Integer exact = byBookId.get(query);
+        if (exact != null) scores.add(exact, SCORE_EXACT_ID);
+        exact = byIsbn.get(query);
+        if (exact != null) scores.add(exact, SCORE_EXACT_ID);
+
+        for (String token : query.split(" ")) {
+            addAll(scores, titleTokens.get(token), SCORE_TITLE_TOKEN);
+            addAll(scores, authorTokens.get(token), SCORE_AUTHOR_TOKEN);
+        }
+
+        // Substring matches: candidates come from the rarest trigram, then get verified
+        if (query.length() >= 3) {
+            matchSubstring(scores, query, titleGrams, normTitles, SCORE_TITLE_SUBSTRING);
+            matchSubstring(scores, query, authorGrams, normAuthors, SCORE_AUTHOR_SUBSTRING);
+        } else {
+            // Too short for a trigram: tokens starting with the query match instead
+            matchPrefix(scores, query, titleTokens, titleTokenKeys, SCORE_TITLE_SUBSTRING);
+            matchPrefix(scores, query, authorTokens, authorTokenKeys, SCORE_AUTHOR_SUBSTRING);
+        }
+
+        // Only the first (page + 1) * pageSize hits are needed, so keep them in a bounded heap
+        long wanted = (long) (page + 1) * pageSize;
+        if (wanted > scores.touched.size()) wanted = scores.touched.size();
+        int[] top = scores.topK((int) wanted);
+
+        int from = page * pageSize;
+        for (int i = from; i < top.length; i++) result.add(books.get(top[i]));
+        return result;
+    }
+
+    // ---------- Helpers ----------
+    static String normalize(String text) {
+        if (text == null) return "";
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (Character.isLetterOrDigit(c)) {
+                if (space && sb.length() > 0) sb.append(' ');
+                sb.append(c);
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void indexText(String text, int doc, Map<String, IntList> tokens, NavigableSet<String> tokenKeys,
+                                  Map<String, IntList> grams) {
+        for (String token : text.split(" ")) {
+            if (token.isEmpty()) continue;
+            if (!tokens.containsKey(token)) tokenKeys.add(token);
+            post(tokens, token, doc);
+        }
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            post(grams, text.substring(i, i + 3), doc);
+        }
+    }
+
+    private static void post(Map<String, IntList> index, String key, int doc) {
+        IntList docs = index.computeIfAbsent(key, k -> new IntList());
+        if (docs.size() == 0 || docs.last() != doc) docs.add(doc);
+    }
+
+    private static void addAll(Scores scores, IntList docs, int score) {
+        if (docs == null) return;
+        for (int i = 0; i < docs.size(); i++) scores.add(docs.get(i), score);
+    }
+
+    private static void matchSubstring(Scores scores, String query, Map<String, IntList> grams,
+                                       List<String> texts, int score) {
+        IntList rarest = null;
+        for (int i = 0; i + 3 <= query.length(); i++) {
+            IntList docs = grams.get(query.substring(i, i + 3));
+            if (docs == null) return; // some trigram never occurs, so no match
+            if (rarest == null || docs.size() < rarest.size()) rarest = docs;
+        }
+        for (int i = 0; i < rarest.size(); i++) {
+            int doc = rarest.get(i);
+            if (texts.get(doc).contains(query)) scores.add(doc, score);
+        }
+    }
+
+    // A doc scores once however many of its tokens start with the query, as with a substring match
+    private static void matchPrefix(Scores scores, String query, Map<String, IntList> tokens,
+                                    NavigableSet<String> tokenKeys, int score) {
+        scores.newPass();
+        for (String token : tokenKeys.subSet(query, true, query + Character.MAX_VALUE, false)) {
+            IntList docs = tokens.get(token);
+            for (int i = 0; i < docs.size(); i++) scores.addOnce(docs.get(i), score);
+        }
+    }
+
+    // Score per doc plus the list of docs touched, so a reset costs only the hits of the last query
+    private static final class Scores {
+        int[] score = new int[0];
+        int[] pass = new int[0];   // last pass that scored each doc, for addOnce
+        int currentPass;
+        final IntList touched = new IntList();
+        int[] heap = new int[16];
+
+        void reset(int docs) {
+            if (score.length < docs) {
+                score = new int[docs];
+                pass = new int[docs];
+                currentPass = 0;
+            }
+            for (int i = 0; i < touched.size(); i++) score[touched.get(i)] = 0;
+            touched.clear();
+        }
+
+        void add(int doc, int value) {
+            if (score[doc] == 0) touched.add(doc);
+            score[doc] += value;
+        }
+
+        // Starts a pass in which addOnce scores each doc at most once
+        void newPass() {
+            if (++currentPass == 0) {
+                Arrays.fill(pass, 0);
+                currentPass = 1;
+            }
+        }
+
+        void addOnce(int doc, int value) {
+            if (pass[doc] == currentPass) return;
+            pass[doc] = currentPass;
+            add(doc, value);
+        }
+
+        // Best k docs, highest score first and lower doc first on ties
+        int[] topK(int k) {
+            if (k <= 0) return new int[0];
+            if (heap.length < k) heap = new int[k];
+            int n = 0;
+            for (int i = 0; i < touched.size(); i++) {
+                int doc = touched.get(i);
+                if (n < k) {
+                    heap[n] = doc;
+                    siftUp(n++);
+                } else if (better(doc, heap[0])) {
+                    heap[0] = doc;
+                    siftDown(0, n);
+                }
+            }
+            // Pop the worst to the back until the heap is empty, leaving the best at the front
+            int[] out = new int[n];
+            for (int last = n - 1; last >= 0; last--) {
+                out[last] = heap[0];
+                heap[0] = heap[last];
+                siftDown(0, last);
+            }
+            return out;
+        }
+
+        private boolean better(int a, int b) {
+            return score[a] != score[b] ? score[a] > score[b] : a < b;
+        }
+
+        // Min-heap on "better": the root is the worst doc kept so far
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!better(heap[parent], heap[i])) break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i, int n) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= n) return;
+                if (child + 1 < n && better(heap[child], heap[child + 1])) child++;
+                if (!better(heap[i], heap[child])) return;
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int t = heap[a];
+            heap[a] = heap[b];
+            heap[b] = t;
+        }
+    }
+}
+
+/**
+ * Binary snapshot of books and members.
+ *
+ * Layout (big-endian):
+ *   header:  magic, version, bookCount, memberCount (ints), bookIndexPos, memberIndexPos,
+ *            createdMillis, logPosition (longs)
+ *   book:    bookId, title, author, isbn, category (UTF-8, int length), issued (byte),
+ *            dueDay (long), timesIssued (int)
+ *   member:  memberId, memberName, memberType, totalFines (double), loan count (int),
+ *            then per loan: bookId, finedThroughDay (long)
+ *   indexes: one long offset per book, then one per member
+ *
+ * open() memory-maps the file and records are only decoded when asked for, so
+ * a single book can be read without loading the whole catalog. One mapping
+ * covers at most 2 GB. logPosition is the change-log offset taken under the
+ * snapshot lock: entries from there on are the ones to replay.
+ */
+class LibrarySnapshot {
+    private static final int MAGIC = 0x4C494253; // "LIBS"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 48;
+
+    private final ByteBuffer buffer;
+    private final int bookCount;
+    private final int memberCount;
+    private final long bookIndexPos;
+    private final long memberIndexPos;
+    private final long createdMillis;
+    private final long logPosition;
+
+    private LibrarySnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a library snapshot (or unsupported version)");
+        }
+        this.bookCount = buffer.getInt(8);
+        this.memberCount = buffer.getInt(12);
+        this.bookIndexPos = buffer.getLong(16);
+        this.memberIndexPos = buffer.getLong(24);
+        this.createdMillis = buffer.getLong(32);
+        this.logPosition = buffer.getLong(40);
+    }
+
+    public static void write(Path path, List<Book> catalog, List<Member> members) throws IOException {
+        write(path, catalog, members, null);
+    }
+
+    // log is the change log being written alongside (null if none); its position is recorded in the header
+    public static void write(Path path, List<Book> catalog, List<Member> members, ChangeLog log) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        long[] bookOffsets = new long[catalog.size()];
+        long[] memberOffsets = new long[members.size()];
+        long createdMillis = System.currentTimeMillis();
+        long logPosition = 0;
+
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+            long pos = HEADER_SIZE;
+            ch.position(HEADER_SIZE);
+
+            // No logged change can run while the records are read, so the state written matches the log position
+            Lock lock = Member.snapshotLock();
+            lock.lock();
+            try {
+                if (log != null) logPosition = log.position();
+                for (int i = 0; i < catalog.size(); i++) {
+                    Book b = catalog.get(i);
+                    byte[][] text = {utf8(b.getBookId()), utf8(b.getTitle()), utf8(b.getAuthor()),
+                            utf8(b.getIsbn()), utf8(b.getCategory())};
+                    long needed = stringsSize(text) + 1 + 8 + 4;
+                    if (buf.remaining() < needed) pos += flush(ch, buf);
+                    buf = fit(buf, needed);
+                    bookOffsets[i] = pos + buf.position();
+                    for (byte[] s : text) putBytes(buf, s);
+                    LocalDate due = b.getDueDate();
+                    buf.put((byte) (b.isIssued() ? 1 : 0));
+                    buf.putLong(due == null ? 0 : due.toEpochDay());
+                    buf.putInt(b.getTimesIssued());
+                    if (buf.position() > buf.capacity() / 2) pos += flush(ch, buf);
+                }
+                for (int i = 0; i < members.size(); i++) {
+                    Member m = members.get(i);
+                    List<Book> loans;
+                    synchronized (m.getBooksIssued()) {
+                        loans = new ArrayList<>(m.getBooksIssued());
+                    }
+                    byte[][] text = {utf8(m.getMemberId()), utf8(m.getMemberName()), utf8(m.getMemberType())};
+                    byte[][] loanIds = new byte[loans.size()][];
+                    for (int j = 0; j < loanIds.length; j++) loanIds[j] = utf8(loans.get(j).getBookId());
+                    long needed = stringsSize(text) + 8 + 4 + stringsSize(loanIds) + 8 * loanIds.length;
+                    if (buf.remaining() < needed) pos += flush(ch, buf);
+                    buf = fit(buf, needed);
+                    memberOffsets[i] = pos + buf.position();
+                    for (byte[] s : text) putBytes(buf, s);
+                    buf.putDouble(m.getTotalFines());
+                    buf.putInt(loans.size());
+                    for (int j = 0; j < loanIds.length; j++) {
+                        putBytes(buf, loanIds[j]);
+                        buf.putLong(Member.chargedThroughDay(loans.get(j)));
+                    }
+                    if (buf.position() > buf.capacity() / 2) pos += flush(ch, buf);
+                }
+            } finally {
+                lock.unlock();
+            }
+            pos += flush(ch, buf);
+
+            long bookIndexPos = pos;
+            for (long off : bookOffsets) {
+                if (buf.remaining() < 8) pos += flush(ch, buf);
+                buf.putLong(off);
+            }
+            pos += flush(ch, buf);
+            long memberIndexPos = pos;
+            for (long off : memberOffsets) {
+                if (buf.remaining() < 8) pos += flush(ch, buf);
+                buf.putLong(off);
+            }
+            flush(ch, buf);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(catalog.size()).putInt(members.size())
+                    .putLong(bookIndexPos).putLong(memberIndexPos).putLong(createdMillis).putLong(logPosition).flip();
+            ch.write(header, 0);
+            ch.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static LibrarySnapshot open(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new LibrarySnapshot(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    public int getBookCount() { return bookCount; }
+    public int getMemberCount() { return memberCount; }
+    public long getCreatedMillis() { return createdMillis; }
+    public long getLogPosition() { return logPosition; }
+
+    // Decodes a single book record
+    public Book readBook(int i) {
+        ByteBuffer buf = buffer.duplicate();
+        buf.position((int) buffer.getLong((int) (bookIndexPos + 8L * i)));
+        Book b = new Book(getString(buf), getString(buf), getString(buf), getString(buf), getString(buf));
+        boolean issued = buf.get() == 1;
+        long dueDay = buf.getLong();
+        b.restoreState(issued, LocalDate.ofEpochDay(dueDay), buf.getInt());
+        return b;
+    }
+
+    public List<Book> loadCatalog() {
+        List<Book> catalog = new ArrayList<>(bookCount);
+        for (int i = 0; i < bookCount; i++) catalog.add(readBook(i));
+        return catalog;
+    }
+
+    // Rebuilds members and re-links their loans to books in the given catalog
+    public List<Member> loadMembers(List<Book> catalog) {
+        Map<String, Book> byId = new HashMap<>();
+        for (Book b : catalog) byId.put(b.getBookId(), b);
+
+        List<Member> members = new ArrayList<>(memberCount);
+        ByteBuffer buf = buffer.duplicate();
+        for (int i = 0; i < memberCount; i++) {
+            buf.position((int) buffer.getLong((int) (memberIndexPos + 8L * i)));
+            Member m = Member.restore(getString(buf), getString(buf), getString(buf));
+            m.restoreFines(buf.getDouble());
+            int loans = buf.getInt();
+            for (int j = 0; j < loans; j++) {
+                Book b = byId.get(getString(buf));
+                long finedThroughDay = buf.getLong();
+                if (b != null && b.isIssued()) m.restoreLoan(b, finedThroughDay);
+            }
+            members.add(m);
+        }
+        return members;
+    }
+
+    // ---------- Encoding helpers ----------
+    // A record bigger than the buffer gets a bigger one; callers flush first when a record does not
+    // fit in what is left, so the bytes flushed are counted in their file position
+    private static ByteBuffer fit(ByteBuffer buf, long needed) throws IOException {
+        if (needed > Integer.MAX_VALUE / 2) throw new IOException("Snapshot record too large: " + needed + " bytes");
+        return buf.capacity() >= needed ? buf : ByteBuffer.allocateDirect((int) needed * 2);
+    }
+
+    private static long flush(FileChannel ch, ByteBuffer buf) throws IOException {
+        buf.flip();
+        long written = 0;
+        while (buf.hasRemaining()) written += ch.write(buf);
+        buf.clear();
+        return written;
+    }
+
+    private static byte[] utf8(String s) {
+        return (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Encoded size of the strings, each with its int length prefix
+    private static long stringsSize(byte[][] strings) {
+        long size = 0;
+        for (byte[] s : strings) size += 4 + s.length;
+        return size;
+    }
+
+    private static void putBytes(ByteBuffer buf, byte[] bytes) {
+        buf.putInt(bytes.length);
+        buf.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
+
+/**
+ * Append-only change log of issue, return, renew and fine events.
+ * Each entry: type (byte), time (epoch millis), memberId, bookId, day, amount.
+ * day is the new due day for ISSUE and RENEW, the return day for RETURN and the
+ * day the loans are charged through for FINE (bookId is empty when a sweep
+ * charged all of the member's loans). Replaying the log with an Applier on top
+ * of the last snapshot, from the log position recorded in it, gives the
+ * current state.
+ */
+class ChangeLog implements Closeable {
+    public static final byte ISSUE = 1;
+    public static final byte RETURN = 2;
+    public static final byte RENEW = 3;
+    public static final byte FINE = 4;
+
+    public interface Listener {
+        // offset is where the entry starts in the log file
+        void onEntry(long offset, byte type, long timeMillis, String memberId, String bookId, long day, double amount);
+    }
+
+    /**
+     * Applies log entries to a catalog and members restored from a snapshot.
+     * Entries before the snapshot's log position are already in it and are
+     * skipped, as are entries for unknown members or books. Timestamps are
+     * not used for this: they can repeat or go backwards, and a change made
+     * while the snapshot was written would be applied twice.
+     */
+    public static class Applier implements Listener {
+        private final Map<String, Book> books = new HashMap<>();
+        private final Map<String, Member> members = new HashMap<>();
+        private final long fromOffset;
+        private int applied = 0;
+
+        public Applier(List<Book> catalog, List<Member> restored, long fromOffset) {
+            for (Book b : catalog) books.put(b.getBookId(), b);
+            for (Member m : restored) members.put(m.getMemberId(), m);
+            this.fromOffset = fromOffset;
+        }
+
+        public int getApplied() { return applied; }
+
+        @Override
+        public void onEntry(long offset, byte type, long timeMillis, String memberId, String bookId, long day,
+                            double amount) {
+            if (offset < fromOffset) return;
+            Member member = members.get(memberId);
+            Book book = bookId.isEmpty() ? null : books.get(bookId);
+            if (member == null || (book == null && type != FINE)) return;
+            switch (type) {
+                case ISSUE:  member.replayIssue(book, day); break;
+                case RETURN: member.replayReturn(book); break;
+                case RENEW:  member.replayRenew(book, day); break;
+                case FINE:   member.replayFine(amount, book, day); break;
+                default:     return;
+            }
+            applied++;
+        }
+    }
+
+    private final FileChannel channel;
+    private final DataOutputStream out;
+
+    public ChangeLog(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    // Offset the next entry will start at; every entry is flushed as it is appended, so this is the file size
+    public synchronized long position() throws IOException {
+        return channel.size();
+    }
+
+    public synchronized void append(byte type, Member member, Book book, long day, double amount) {
+        try {
+            out.writeByte(type);
+            out.writeLong(System.currentTimeMillis());
+            out.writeUTF(member.getMemberId());
+            out.writeUTF(book == null ? "" : book.getBookId());
+            out.writeLong(day);
+            out.writeDouble(amount);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write change log", e);
+        }
+    }
+
+    // Reads every complete entry; a torn entry at the end (crash mid-write) is ignored
+    public static int replay(Path path, Listener listener) throws IOException {
+        int count = 0;
+        CountingInput counter = new CountingInput(new BufferedInputStream(Files.newInputStream(path)));
+        try (DataInputStream in = new DataInputStream(counter)) {
+            while (true) {
+                try {
+                    long offset = counter.count;
+                    byte type = in.readByte();
+                    long time = in.readLong();
+                    String memberId = in.readUTF();
+                    String bookId = in.readUTF();
+                    long day = in.readLong();
+                    double amount = in.readDouble();
+                    listener.onEntry(offset, type, time, memberId, bookId, day, amount);
+                    count++;
+                } catch (EOFException e) {
+                    return count;
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    // Counts the bytes the DataInputStream has consumed, which gives each entry's offset
+    private static final class CountingInput extends FilterInputStream {
+        long count = 0;
+
+        CountingInput(InputStream in) { super(in); }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
+
 public class Assignment5_StudentName {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--bench")) {
+            runBenchmarks();
+            return;
+        }
+
         // Setup
         Member.setLibraryName("City Central Library");
         Member.setFinePerDay(10.0);
+        Member.setFinePerDay("Faculty", 5.0);
 
         List<Book> catalog = new ArrayList<>();
         catalog.add(new Book("B001", "Java Programming", "James Gosling", "12345", "Programming"));
@@ -218,15 +1766,197 @@ public class Assignment5_StudentName {
         m1.issueBook(catalog.get(0), 7);
         m2.issueBook(catalog.get(1), 5);
 
-        Member.searchBooks(catalog, "Java");
-        Member.reserveBook(catalog.get(0));
+        CatalogIndex index = new CatalogIndex(catalog);
+        Member.searchBooks(index, "Java", 0, 10);
+        Member.searchBooks(index, "systems", 0, 10);
+        Member.addHoldListener((member, book) ->
+                System.out.println("Notify " + member.getMemberName() + ": " + book.getTitle() + " is ready for you."));
+        m2.reserveBook(catalog.get(0));
 
         // Simulate return after delay
         m1.returnBook(catalog.get(0)); 
         m2.renewBook(catalog.get(1), 10);
 
         // Reports
-        Member.getOverdueBooks(catalog);
+        Member.getOverdueBooks();
+
+        // Simulate the nightly fine sweep 20 days later
+        Member.runFineSweep(LocalDate.now().plusDays(20));
         Member.generateLibraryReport(catalog, members);
+
+        // Concurrent lending check: 100k issue/return requests from 8 threads
+        try {
+            boolean ok = stressTestLending(100_000, 8);
+            System.out.println("Lending stress test " + (ok ? "passed" : "FAILED"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Member.shutdown();
+    }
+
+    // Benchmark: writing a snapshot and cold-starting the catalog from it
+    public static void benchmarkSnapshot(int catalogSize) throws IOException {
+        Path file = Files.createTempFile("library", ".snap");
+        try {
+            long start = System.nanoTime();
+            writeSampleSnapshot(file, catalogSize);
+            long writeMs = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            LibrarySnapshot snap = LibrarySnapshot.open(file);
+            Book sample = snap.readBook(catalogSize / 2);
+            long lazyUs = (System.nanoTime() - start) / 1000;
+
+            start = System.nanoTime();
+            List<Book> loaded = snap.loadCatalog();
+            long loadMs = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.println("Snapshot benchmark (" + catalogSize + " books, " + (Files.size(file) >> 20) + " MB)");
+            System.out.println("Build + write: " + writeMs + " ms, open + one book: " + lazyUs + " us (" + sample.getTitle() + ")");
+            System.out.println("Full catalog load: " + loadMs + " ms (" + loaded.size() + " books)");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // Separate method so the generated catalog can be collected before loading
+    private static void writeSampleSnapshot(Path file, int catalogSize) throws IOException {
+        List<Book> books = new ArrayList<>(catalogSize);
+        for (int i = 0; i < catalogSize; i++) {
+            Book b = new Book("B" + i, "Title number " + i, "Author " + (i % 5000), "978" + i, "Category " + (i % 40));
+            if (i % 10 == 0) b.issueBook(14);
+            books.add(b);
+        }
+        LibrarySnapshot.write(file, books, new ArrayList<>());
+    }
+
+    // End-to-end benchmarks at full size (main --bench, or ./gradlew benchmarks)
+    static void runBenchmarks() throws IOException {
+        benchmarkSearch(1_000_000, 1_000);
+        benchmarkFines(10_000_000, 100_000);
+        benchmarkSnapshot(10_000_000);
+    }
+
+    // Benchmark: the overdue list and the full nightly fine sweep over an index of open loans
+    public static void benchmarkFines(int openLoans, int memberCount) {
+        Random rnd = new Random(7);
+        String[] types = {"Student", "Faculty", "General"};
+        List<Member> borrowers = new ArrayList<>(memberCount);
+        for (int i = 0; i < memberCount; i++) borrowers.add(new Member("Fine" + i, types[i % 3]));
+        DueDateIndex index = new DueDateIndex();
+        for (int i = 0; i < openLoans; i++) {
+            Book b = new Book("F" + i, "Fine test " + i, "Tester", "F-ISBN" + i, "Test");
+            b.issueBook(1 + rnd.nextInt(60));
+            index.add(b, borrowers.get(rnd.nextInt(memberCount)));
+        }
+
+        // Loans are due over the next 60 days, so two days from now about 1 in 30 is overdue
+        int overdue = 0;
+        long bestOverdue = Long.MAX_VALUE;
+        for (int run = 0; run < 5; run++) {
+            long start = System.nanoTime();
+            overdue = index.getOverdue(LocalDate.now().plusDays(3)).size();
+            bestOverdue = Math.min(bestOverdue, System.nanoTime() - start);
+        }
+        System.out.println("Overdue list (" + openLoans + " open loans): " + (bestOverdue / 1_000_000) + " ms for " +
+                overdue + " overdue books");
+
+        // Each run sweeps one day later, so every run charges a fresh day of fines
+        LocalDate first = LocalDate.now().plusDays(30);
+        int charged = 0;
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < 5; run++) {
+            long start = System.nanoTime();
+            charged = index.sweep(first.plusDays(run));
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double total = 0;
+        for (Member m : borrowers) total += m.getTotalFines();
+        System.out.println("Fine sweep benchmark (" + openLoans + " open loans, " + memberCount + " members): " +
+                (best / 1_000_000) + " ms per sweep, " + charged + " loans charged, Rs." + total + " posted");
+    }
+
+    // Stress test: many threads issue and return a small set of books at once
+    public static boolean stressTestLending(int requests, int threads) throws InterruptedException {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 50; i++) books.add(new Book("S" + i, "Stress " + i, "Tester", "S-ISBN" + i, "Test"));
+        List<Member> borrowers = new ArrayList<>();
+        String[] types = {"Student", "Faculty", "General"};
+        for (int i = 0; i < 200; i++) borrowers.add(new Member("Stress" + i, types[i % 3]));
+
+        AtomicInteger[] holders = new AtomicInteger[books.size()];
+        for (int i = 0; i < holders.length; i++) holders[i] = new AtomicInteger(0);
+        AtomicInteger violations = new AtomicInteger(0);
+        AtomicInteger issued = new AtomicInteger(0);
+        LendingEngine engine = new LendingEngine(new DueDateIndex());
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(requests);
+        for (int r = 0; r < requests; r++) {
+            final int seed = r;
+            pool.execute(() -> {
+                Random rnd = new Random(seed);
+                int b = rnd.nextInt(books.size());
+                Member m = borrowers.get(rnd.nextInt(borrowers.size()));
+                if (engine.issue(m, books.get(b), 14) == LendingEngine.Result.ISSUED) {
+                    issued.incrementAndGet();
+                    if (holders[b].incrementAndGet() != 1) violations.incrementAndGet();
+                    if (m.getBooksIssued().size() > m.getMaxBooksAllowed()) violations.incrementAndGet();
+                    holders[b].decrementAndGet();
+                    engine.returnBook(m, books.get(b));
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+        pool.shutdown();
+        engine.shutdown();
+
+        for (Member m : borrowers) {
+            if (!m.getBooksIssued().isEmpty()) violations.incrementAndGet();
+        }
+        System.out.println("Lending stress test: " + requests + " requests, " + issued.get() +
+                " issued, " + violations.get() + " violations");
+        return violations.get() == 0;
+    }
+
+    // Benchmark: indexed search against the reference catalog scan, over the kinds of query members type
+    public static void benchmarkSearch(int catalogSize, int queries) {
+        String[] words = {"java", "database", "systems", "networks", "algorithms", "design", "compilers", "graphics"};
+        List<Book> books = new ArrayList<>(catalogSize);
+        Random rnd = new Random(42);
+        for (int i = 0; i < catalogSize; i++) {
+            String title = words[rnd.nextInt(words.length)] + " " + words[rnd.nextInt(words.length)] + " vol " + i;
+            books.add(new Book("B" + i, title, "Author " + (i % 1000), "ISBN" + i, words[i % words.length]));
+        }
+        CatalogIndex index = new CatalogIndex(books);
+
+        String[] kinds = {"title word", "two title words", "author", "short prefix", "book id"};
+        String[][] keywords = new String[kinds.length][queries];
+        for (int q = 0; q < queries; q++) {
+            String word = words[rnd.nextInt(words.length)];
+            keywords[0][q] = word;
+            keywords[1][q] = word + " " + words[rnd.nextInt(words.length)];
+            keywords[2][q] = "Author " + rnd.nextInt(1000);
+            keywords[3][q] = word.substring(0, 1 + rnd.nextInt(2));
+            keywords[4][q] = "B" + rnd.nextInt(catalogSize);
+        }
+
+        // The scan reads the whole catalog per query, so it gets fewer of them
+        int scanQueries = Math.max(1, Math.min(queries, 100_000_000 / Math.max(1, catalogSize)));
+        System.out.println("Search benchmark (" + catalogSize + " books; " + queries + " indexed and " +
+                scanQueries + " scanned queries per kind)");
+        for (int k = 0; k < kinds.length; k++) {
+            long start = System.nanoTime();
+            long hits = 0;
+            for (int q = 0; q < scanQueries; q++) hits += Member.scanBooks(books, keywords[k][q]).size();
+            double scanUs = (System.nanoTime() - start) / 1000.0 / scanQueries;
+
+            start = System.nanoTime();
+            for (int q = 0; q < queries; q++) hits += index.search(keywords[k][q], 0, 10).size();
+            double indexUs = (System.nanoTime() - start) / 1000.0 / queries;
+            System.out.println(String.format("  %-16s scan %10.1f us/query, index %8.1f us/query (%d hits)",
+                    kinds[k], scanUs, indexUs, hits));
+        }
     }
 }
@@ -4,6 +4,14 @@
  */
 
 import java.util.*;
+import java.util.stream.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * Employee class representing different types of employees
@@ -15,13 +23,19 @@ class Employee {
     private String designation;
     private double baseSalary;
     private String joinDate;
-    private boolean[] attendanceRecord; // 30 days attendance
+    private AttendanceBitset attendanceRecord; // one bit per day
+    private AttendanceBitset leaveRecord; // approved leave days (paid)
+    private int payPeriodStart; // absolute day index of day 1 of the pay period
+    private int cachedPresentDays = -1; // present days in the pay period, -1 if stale
+    private int cachedPaidDays = -1; // present or on leave in the pay period, -1 if stale
+    private OrgIndex orgIndex; // notified when pay inputs change
 
     // Static variables
     public static int totalEmployees = 0;
     public static String companyName = "TechCorp Pvt Ltd";
-    public static double totalSalaryExpense = 0;
+    public static volatile double totalSalaryExpense = 0; // set by the latest PayrollRun
     public static int workingDaysPerMonth = 30;
+    public static LeaveEngine leaveEngine = new LeaveEngine();
 
     // Constructor
     public Employee(String empId, String empName, String department, String designation,
@@ -32,36 +46,95 @@ class Employee {
         this.designation = designation;
         this.baseSalary = baseSalary;
         this.joinDate = joinDate;
-        this.attendanceRecord = new boolean[workingDaysPerMonth];
+        this.attendanceRecord = new AttendanceBitset();
+        this.leaveRecord = new AttendanceBitset();
+        this.payPeriodStart = 0;
         totalEmployees++;
     }
 
-    // Mark attendance
+    // Mark attendance (day 1..workingDaysPerMonth of the current pay period)
     public void markAttendance(int day, boolean present) {
         if (day >= 1 && day <= workingDaysPerMonth) {
-            attendanceRecord[day - 1] = present;
+            attendanceRecord.set(payPeriodStart + day - 1, present);
+            payChanged();
         } else {
             System.out.println("Invalid day entered!");
         }
     }
 
+    // Bulk load from a time clock: bit i of presentBits[i / 64] is day fromDay + i
+    public void loadAttendance(int fromDay, long[] presentBits, int days) {
+        attendanceRecord.setBits(fromDay, presentBits, days);
+        payChanged();
+    }
+
+    // Moves the pay period; days are absolute indexes (e.g. epoch days)
+    public void setPayPeriodStart(int startDay) {
+        this.payPeriodStart = startDay;
+        payChanged();
+    }
+
+    // Salary changes (e.g. appraisal) also update the organization rollups
+    public void setBaseSalary(double baseSalary) {
+        this.baseSalary = baseSalary;
+        payChanged();
+    }
+
+    void setOrgIndex(OrgIndex orgIndex) {
+        this.orgIndex = orgIndex;
+    }
+
+    private void payChanged() {
+        cachedPresentDays = -1;
+        cachedPaidDays = -1;
+        if (orgIndex != null) orgIndex.refresh(this);
+    }
+
+    public int getPresentDays() {
+        if (cachedPresentDays < 0) {
+            cachedPresentDays = attendanceRecord.count(payPeriodStart, payPeriodStart + workingDaysPerMonth);
+        }
+        return cachedPresentDays;
+    }
+
+    public int getPresentDays(int fromDay, int toDay) {
+        return attendanceRecord.count(fromDay, toDay);
+    }
+
+    // Days paid in the pay period: present or on approved leave
+    public int getPaidDays() {
+        if (cachedPaidDays < 0) {
+            cachedPaidDays = attendanceRecord.countUnion(leaveRecord, payPeriodStart, payPeriodStart + workingDaysPerMonth);
+        }
+        return cachedPaidDays;
+    }
+
+    public boolean isOnLeave(int day) {
+        return leaveRecord.get(day);
+    }
+
+    // Called by LeaveEngine (under this employee's lock) for each approved day
+    void markLeave(int day) {
+        leaveRecord.set(day, true);
+    }
+
+    void leaveChanged() {
+        payChanged();
+    }
+
+    public int getPayPeriodStart() {
+        return payPeriodStart;
+    }
+
     // Calculate monthly salary
     public double calculateSalary() {
-        int presentDays = 0;
-        for (boolean day : attendanceRecord) {
-            if (day) presentDays++;
-        }
-        double salary = (baseSalary / workingDaysPerMonth) * presentDays;
-        totalSalaryExpense += salary;
-        return salary;
+        int paidDays = getPaidDays();
+        return (baseSalary / workingDaysPerMonth) * paidDays;
     }
 
     // Performance-based bonus
     public double calculateBonus() {
-        int presentDays = 0;
-        for (boolean day : attendanceRecord) {
-            if (day) presentDays++;
-        }
+        int presentDays = getPresentDays();
         double attendanceRate = (presentDays * 100.0) / workingDaysPerMonth;
         if (attendanceRate >= 95) {
             return baseSalary * 0.20; // 20% bonus
@@ -71,10 +144,10 @@ class Employee {
         return 0.0;
     }
 
-    // Generate payslip
-    public void generatePaySlip() {
-        double salary = calculateSalary();
-        double bonus = calculateBonus();
+    // Generate payslip from a completed payroll run
+    public void generatePaySlip(PayrollRun run) {
+        double salary = run.getSalary(this);
+        double bonus = run.getBonus(this);
         System.out.println("----- Pay Slip for " + empName + " -----");
         System.out.println("Employee ID: " + empId);
         System.out.println("Designation: " + designation);
@@ -85,15 +158,27 @@ class Employee {
         System.out.println("--------------------------------------");
     }
 
-    // Leave request
-    public void requestLeave(int days) {
-        if (days <= 5) {
+    // Leave request starting on `day` of the current pay period (may run into later periods)
+    public void requestLeave(int day, int days) {
+        if (leaveEngine.approve(this, payPeriodStart + day - 1, days)) {
             System.out.println(empName + " has been granted " + days + " days leave.");
         } else {
-            System.out.println(empName + " leave request denied (exceeds max allowed).");
+            System.out.println(empName + " leave request denied (balance " + leaveEngine.getBalance(this) + " days).");
         }
     }
 
+    public String getEmpId() {
+        return empId;
+    }
+
+    public String getDesignation() {
+        return designation;
+    }
+
+    public double getBaseSalary() {
+        return baseSalary;
+    }
+
     public String getDepartment() {
         return department;
     }
@@ -103,6 +188,161 @@ class Employee {
     }
 }
 
+/**
+ * Attendance stored as packed bits, one per day, over any span of days.
+ * Words are allocated only for the range of days actually used.
+ */
+class AttendanceBitset {
+    private long[] words = new long[0];
+    private int baseWord = 0; // word index of words[0]
+
+    public boolean get(int day) {
+        int w = (day >> 6) - baseWord;
+        return w >= 0 && w < words.length && (words[w] & (1L << day)) != 0;
+    }
+
+    public void set(int day, boolean present) {
+        if (present) {
+            int w = ensure(day >> 6);
+            words[w] |= 1L << day;
+        } else {
+            int w = (day >> 6) - baseWord;
+            if (w >= 0 && w < words.length) words[w] &= ~(1L << day);
+        }
+    }
+
+    // Sets `days` days starting at fromDay from packed bits, 64 days at a time
+    public void setBits(int fromDay, long[] bits, int days) {
+        if (days <= 0) return;
+        ensure(fromDay >> 6);
+        ensure((fromDay + days - 1) >> 6);
+        int shift = fromDay & 63;
+        for (int i = 0; i < days; i += 64) {
+            int n = Math.min(64, days - i);
+            long mask = n == 64 ? -1L : (1L << n) - 1;
+            long value = bits[i >> 6] & mask;
+            int w = ((fromDay + i) >> 6) - baseWord;
+            words[w] = (words[w] & ~(mask << shift)) | (value << shift);
+            if (shift != 0 && (mask >>> (64 - shift)) != 0) {
+                words[w + 1] = (words[w + 1] & ~(mask >>> (64 - shift))) | (value >>> (64 - shift));
+            }
+        }
+    }
+
+    // Present days in [fromDay, toDay)
+    public int count(int fromDay, int toDay) {
+        return countUnion(null, fromDay, toDay);
+    }
+
+    // Days in [fromDay, toDay) set in this bitset or in other (other may be null)
+    public int countUnion(AttendanceBitset other, int fromDay, int toDay) {
+        if (toDay <= fromDay) return 0;
+        int firstWord = fromDay >> 6;
+        int lastWord = (toDay - 1) >> 6;
+        int total = 0;
+        for (int w = firstWord; w <= lastWord; w++) {
+            long word = word(w) | (other == null ? 0 : other.word(w));
+            if (w == firstWord) word &= -1L << fromDay;
+            if (w == lastWord) word &= -1L >>> (63 - ((toDay - 1) & 63));
+            total += Long.bitCount(word);
+        }
+        return total;
+    }
+
+    private long word(int wordIndex) {
+        int w = wordIndex - baseWord;
+        return w >= 0 && w < words.length ? words[w] : 0;
+    }
+
+    // Returns the array index for an absolute word index, growing the array if needed
+    private int ensure(int wordIndex) {
+        if (words.length == 0) {
+            baseWord = wordIndex;
+            words = new long[1];
+        } else if (wordIndex < baseWord) {
+            long[] grown = new long[words.length + (baseWord - wordIndex)];
+            System.arraycopy(words, 0, grown, baseWord - wordIndex, words.length);
+            words = grown;
+            baseWord = wordIndex;
+        } else if (wordIndex - baseWord >= words.length) {
+            words = Arrays.copyOf(words, wordIndex - baseWord + 1);
+        }
+        return wordIndex - baseWord;
+    }
+}
+
+/**
+ * Leave engine: accrual balances, approvals and a date-indexed leave calendar.
+ * Balances are kept in half-day units in an AtomicInteger per employee, so
+ * accrual never blocks. An approval holds the employee's lock while it checks
+ * which days are new, deducts them with a CAS and marks the leave bitset, so
+ * two concurrent approvals can never overspend a balance or charge a day twice.
+ */
+class LeaveEngine {
+    public static double openingBalanceDays = 5;  // granted when an employee is first seen
+    public static double accrualPerMonthDays = 1.5;
+
+    private final Map<Employee, AtomicInteger> halfDayBalances = new ConcurrentHashMap<>();
+    // day -> department -> employees on leave that day
+    private final Map<Integer, Map<String, Set<Employee>>> calendar = new ConcurrentHashMap<>();
+
+    // Monthly accrual for a batch of employees
+    public void accrueMonth(Employee[] employees) {
+        int halfDays = (int) Math.round(accrualPerMonthDays * 2);
+        for (Employee e : employees) balance(e).addAndGet(halfDays);
+    }
+
+    public double getBalance(Employee e) {
+        return balance(e).get() / 2.0;
+    }
+
+    // Approves `days` days from fromDay if the balance covers the days not already on leave
+    public boolean approve(Employee e, int fromDay, int days) {
+        if (days <= 0) return false;
+        synchronized (e) {
+            List<Integer> newDays = new ArrayList<>();
+            for (int d = fromDay; d < fromDay + days; d++) {
+                if (!e.isOnLeave(d)) newDays.add(d);
+            }
+            AtomicInteger balance = balance(e);
+            int cost = newDays.size() * 2;
+            while (true) {
+                int current = balance.get();
+                if (current < cost) return false;
+                if (balance.compareAndSet(current, current - cost)) break;
+            }
+            for (int d : newDays) {
+                e.markLeave(d);
+                calendar.computeIfAbsent(d, k -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(e.getDepartment(), k -> ConcurrentHashMap.newKeySet())
+                        .add(e);
+            }
+        }
+        e.leaveChanged();
+        return true;
+    }
+
+    // Everyone in the team who is out on the given day
+    public Set<Employee> whoIsOut(int day, String department) {
+        Map<String, Set<Employee>> byDept = calendar.get(day);
+        if (byDept == null) return Collections.emptySet();
+        Set<Employee> out = byDept.get(department);
+        return out == null ? Collections.emptySet() : Collections.unmodifiableSet(out);
+    }
+
+    public int countOut(int day) {
+        Map<String, Set<Employee>> byDept = calendar.get(day);
+        if (byDept == null) return 0;
+        int total = 0;
+        for (Set<Employee> out : byDept.values()) total += out.size();
+        return total;
+    }
+
+    private AtomicInteger balance(Employee e) {
+        return halfDayBalances.computeIfAbsent(e, k -> new AtomicInteger((int) Math.round(openingBalanceDays * 2)));
+    }
+}
+
 /**
  * Department class to manage employees and budget
  */
@@ -121,20 +361,399 @@ class Department {
         this.budget = budget;
     }
 
-    // Department-wise expenses
-    public double calculateDepartmentExpense() {
+    // Department-wise expenses, read from a payroll run
+    public double calculateDepartmentExpense(PayrollRun run) {
         double expense = 0;
         for (Employee e : employees) {
             if (e != null) {
-                expense += e.calculateSalary() + e.calculateBonus();
+                expense += run.getTotalPayable(e);
             }
         }
         return expense;
     }
 
+    public String getDeptId() {
+        return deptId;
+    }
+
     public String getDeptName() {
         return deptName;
     }
+
+    public double getBudget() {
+        return budget;
+    }
+
+    public Employee[] getEmployees() {
+        return employees;
+    }
+}
+
+/**
+ * Organization index: nested departments with expense rollups.
+ * Every department node keeps the budget, actual expense and headcount of its
+ * whole subtree. When an employee's attendance or salary changes only the
+ * difference is pushed up the ancestors, so budget-vs-actual for any subtree
+ * is a field read.
+ */
+class OrgIndex {
+    private static class Node {
+        final Department dept;
+        final Node parent;
+        double rollupBudget;
+        double rollupActual;
+        int rollupHeadcount;
+
+        Node(Department dept, Node parent) {
+            this.dept = dept;
+            this.parent = parent;
+        }
+    }
+
+    private final Map<Department, Node> nodes = new HashMap<>();
+    private final Map<String, Department> byName = new HashMap<>();
+    private final Map<Employee, Node> employeeNode = new HashMap<>();
+    private final Map<Employee, Double> employeeExpense = new HashMap<>();
+
+    // Adds a department (parent may be null for the top level) with its employees
+    public synchronized void addDepartment(Department dept, Department parent) {
+        Node parentNode = parent == null ? null : nodes.get(parent);
+        if (parent != null && parentNode == null) {
+            throw new IllegalArgumentException("Parent department not indexed: " + parent.getDeptName());
+        }
+        Node node = new Node(dept, parentNode);
+        nodes.put(dept, node);
+        byName.put(dept.getDeptName().toLowerCase(), dept);
+        for (Node n = node; n != null; n = n.parent) n.rollupBudget += dept.getBudget();
+
+        for (Employee e : dept.getEmployees()) {
+            if (e != null) addEmployee(e, dept);
+        }
+    }
+
+    // Places (or moves) an employee into a department
+    public synchronized void addEmployee(Employee e, Department dept) {
+        Node node = nodes.get(dept);
+        if (node == null) throw new IllegalArgumentException("Department not indexed: " + dept.getDeptName());
+        removeEmployee(e);
+        double expense = e.calculateSalary() + e.calculateBonus();
+        employeeNode.put(e, node);
+        employeeExpense.put(e, expense);
+        for (Node n = node; n != null; n = n.parent) {
+            n.rollupActual += expense;
+            n.rollupHeadcount++;
+        }
+        e.setOrgIndex(this);
+    }
+
+    public synchronized void removeEmployee(Employee e) {
+        Node node = employeeNode.remove(e);
+        if (node == null) return;
+        double expense = employeeExpense.remove(e);
+        for (Node n = node; n != null; n = n.parent) {
+            n.rollupActual -= expense;
+            n.rollupHeadcount--;
+        }
+        e.setOrgIndex(null);
+    }
+
+    // Called by Employee when attendance or salary changes
+    synchronized void refresh(Employee e) {
+        Node node = employeeNode.get(e);
+        if (node == null) return;
+        double expense = e.calculateSalary() + e.calculateBonus();
+        double delta = expense - employeeExpense.put(e, expense);
+        if (delta == 0) return;
+        for (Node n = node; n != null; n = n.parent) n.rollupActual += delta;
+    }
+
+    // Links the free-text Employee.department back to a Department
+    public synchronized Department findDepartment(String name) {
+        return byName.get(name.toLowerCase());
+    }
+
+    public synchronized Department getDepartmentOf(Employee e) {
+        Node node = employeeNode.get(e);
+        return node == null ? null : node.dept;
+    }
+
+    public synchronized double getBudget(Department dept) { return node(dept).rollupBudget; }
+    public synchronized double getActual(Department dept) { return node(dept).rollupActual; }
+    public synchronized int getHeadcount(Department dept) { return node(dept).rollupHeadcount; }
+
+    // Positive when the subtree is under budget
+    public synchronized double getVariance(Department dept) {
+        Node node = node(dept);
+        return node.rollupBudget - node.rollupActual;
+    }
+
+    private Node node(Department dept) {
+        Node node = nodes.get(dept);
+        if (node == null) throw new IllegalArgumentException("Department not indexed: " + dept.getDeptName());
+        return node;
+    }
+}
+
+/**
+ * Immutable result of one payroll run.
+ * Salary and bonus are computed exactly once per employee in a parallel pass on
+ * the fork-join pool, and the totals come from parallel reductions, so reports
+ * that read from the run never recompute or double count anything.
+ */
+final class PayrollRun {
+    private final String period;
+    private final Map<Employee, Integer> index;
+    private final double[] salaries;
+    private final double[] bonuses;
+    private final double totalSalary;
+    private final double totalBonus;
+    private final Map<String, Double> departmentTotals;
+
+    private PayrollRun(String period, Employee[] employees) {
+        int n = employees.length;
+        double[] salary = new double[n];
+        double[] bonus = new double[n];
+        // Each index is written by exactly one task
+        IntStream.range(0, n).parallel().forEach(i -> {
+            salary[i] = employees[i].calculateSalary();
+            bonus[i] = employees[i].calculateBonus();
+        });
+
+        Map<Employee, Integer> idx = new IdentityHashMap<>(n);
+        for (int i = 0; i < n; i++) idx.put(employees[i], i);
+
+        this.period = period;
+        this.index = Collections.unmodifiableMap(idx);
+        this.salaries = salary;
+        this.bonuses = bonus;
+        this.totalSalary = IntStream.range(0, n).parallel().mapToDouble(i -> salary[i]).sum();
+        this.totalBonus = IntStream.range(0, n).parallel().mapToDouble(i -> bonus[i]).sum();
+        this.departmentTotals = Collections.unmodifiableMap(IntStream.range(0, n).parallel().boxed()
+                .collect(Collectors.groupingBy(i -> employees[i].getDepartment(), TreeMap::new,
+                        Collectors.summingDouble(i -> salary[i] + bonus[i]))));
+    }
+
+    public static PayrollRun run(String period, Employee[] employees) {
+        PayrollRun run = new PayrollRun(period, employees);
+        Employee.totalSalaryExpense = run.totalSalary;
+        return run;
+    }
+
+    public String getPeriod() { return period; }
+    public int getEmployeeCount() { return salaries.length; }
+    public double getTotalSalary() { return totalSalary; }
+    public double getTotalBonus() { return totalBonus; }
+    public double getTotalPayroll() { return totalSalary + totalBonus; }
+    public Map<String, Double> getDepartmentTotals() { return departmentTotals; }
+
+    public double getSalary(Employee e) { return salaries[slot(e)]; }
+    public double getBonus(Employee e) { return bonuses[slot(e)]; }
+    public double getTotalPayable(Employee e) { return getSalary(e) + getBonus(e); }
+
+    private int slot(Employee e) {
+        Integer i = index.get(e);
+        if (i == null) throw new IllegalArgumentException(e.getEmpName() + " is not part of payroll run " + period);
+        return i;
+    }
+}
+
+/**
+ * Bulk payslip output as CSV.
+ * Each batch is split into chunks that are rendered in parallel straight into
+ * reusable byte buffers, and then written in order through a single channel.
+ * The file itself is the checkpoint: after a crash, write() keeps every
+ * complete row, drops a torn last row and carries on from the next employee,
+ * once it has checked that the last row belongs to the same run.
+ */
+class PayslipWriter {
+    public static final String HEADER = "period,empId,empName,designation,baseSalary,netSalary,bonus,totalPayable\n";
+    public static int batchSize = 10_000;
+
+    private static final int CHUNK_ROWS = 1024;
+
+    // Rendered rows for one slice of a batch; the arrays are reused from batch to batch
+    private static final class Chunk {
+        final StringBuilder row = new StringBuilder(256);
+        byte[] bytes = new byte[CHUNK_ROWS * 128];
+        int length;
+    }
+
+    // Writes payslips for all employees (in order) and returns how many rows were written this time
+    public static int write(PayrollRun run, Employee[] employees, Path out) throws IOException {
+        try (FileChannel ch = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            int done = resumePoint(ch, run, employees, out);
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+            if (ch.size() == 0) {
+                buf.put(HEADER.getBytes(StandardCharsets.UTF_8));
+            }
+
+            Chunk[] chunks = new Chunk[(Math.min(batchSize, employees.length) + CHUNK_ROWS - 1) / CHUNK_ROWS];
+            for (int c = 0; c < chunks.length; c++) chunks[c] = new Chunk();
+
+            for (int start = done; start < employees.length; start += batchSize) {
+                int end = Math.min(employees.length, start + batchSize);
+                final int from = start;
+                int used = (end - start + CHUNK_ROWS - 1) / CHUNK_ROWS;
+                IntStream.range(0, used).parallel().forEach(c -> {
+                    Chunk chunk = chunks[c];
+                    chunk.length = 0;
+                    int last = Math.min(end, from + (c + 1) * CHUNK_ROWS);
+                    for (int i = from + c * CHUNK_ROWS; i < last; i++) {
+                        chunk.row.setLength(0);
+                        render(run, employees[i], chunk.row);
+                        encode(chunk, chunk.row);
+                    }
+                });
+
+                for (int c = 0; c < used; c++) {
+                    Chunk chunk = chunks[c];
+                    if (buf.remaining() < chunk.length) drain(ch, buf);
+                    if (chunk.length > buf.capacity()) {
+                        ch.write(ByteBuffer.wrap(chunk.bytes, 0, chunk.length));
+                    } else {
+                        buf.put(chunk.bytes, 0, chunk.length);
+                    }
+                }
+                drain(ch, buf);
+                ch.force(false); // batch is durable before moving on
+            }
+            drain(ch, buf);
+            return Math.max(0, employees.length - done);
+        }
+    }
+
+    static void render(PayrollRun run, Employee e, StringBuilder sb) {
+        double salary = run.getSalary(e);
+        double bonus = run.getBonus(e);
+        appendField(sb, run.getPeriod()).append(',');
+        appendField(sb, e.getEmpId()).append(',');
+        appendField(sb, e.getEmpName()).append(',');
+        appendField(sb, e.getDesignation()).append(',');
+        sb.append(e.getBaseSalary()).append(',')
+                .append(salary).append(',')
+                .append(bonus).append(',')
+                .append(salary + bonus).append('\n');
+    }
+
+    private static StringBuilder appendField(StringBuilder sb, String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return sb.append(value);
+        }
+        return sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    // UTF-8 encodes the row onto the end of the chunk, growing it if needed
+    private static void encode(Chunk chunk, CharSequence row) {
+        int need = chunk.length + row.length() * 3;
+        if (need > chunk.bytes.length) chunk.bytes = Arrays.copyOf(chunk.bytes, Math.max(need, chunk.bytes.length * 2));
+        byte[] b = chunk.bytes;
+        int n = chunk.length;
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (c < 0x80) {
+                b[n++] = (byte) c;
+            } else if (c < 0x800) {
+                b[n++] = (byte) (0xC0 | (c >> 6));
+                b[n++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < row.length()
+                    && Character.isLowSurrogate(row.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, row.charAt(++i));
+                b[n++] = (byte) (0xF0 | (cp >> 18));
+                b[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[n++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                b[n++] = '?'; // unpaired surrogate, as String.getBytes would
+            } else {
+                b[n++] = (byte) (0xE0 | (c >> 12));
+                b[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        chunk.length = n;
+    }
+
+    // Counts complete rows already in the file (newlines inside quoted fields do not end
+    // a row), truncates anything after the last complete row, and checks that the last
+    // row is this run's period and the matching employee before resuming after it
+    private static int resumePoint(FileChannel ch, PayrollRun run, Employee[] employees, Path out) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+        long pos = 0, rowEnd = -1, lastRowStart = 0, rowStart = 0;
+        boolean quoted = false;
+        int rows = 0;
+        ch.position(0);
+        while (ch.read(buf) > 0) {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                byte b = buf.get();
+                if (b == '"') {
+                    quoted = !quoted; // an escaped "" toggles twice
+                } else if (b == '\n' && !quoted) {
+                    rows++;
+                    lastRowStart = rowStart;
+                    rowEnd = pos;
+                    rowStart = pos + 1;
+                }
+                pos++;
+            }
+            buf.clear();
+        }
+        ch.truncate(rowEnd + 1);
+        ch.position(rowEnd + 1);
+        int done = Math.max(0, rows - 1); // minus the header
+        if (done == 0) return 0;
+
+        ByteBuffer last = ByteBuffer.allocate((int) (rowEnd - lastRowStart));
+        while (last.hasRemaining() && ch.read(last, lastRowStart + last.position()) > 0) { }
+        List<String> fields = parseRow(new String(last.array(), 0, last.position(), StandardCharsets.UTF_8));
+        String period = fields.size() > 0 ? fields.get(0) : "";
+        String empId = fields.size() > 1 ? fields.get(1) : "";
+        if (!period.equals(run.getPeriod())) {
+            throw new IOException(out + " holds payslips for period " + period + ", not " + run.getPeriod());
+        }
+        if (done > employees.length || !empId.equals(employees[done - 1].getEmpId())) {
+            throw new IOException(out + " row " + done + " is employee " + empId +
+                    ", which does not match this employee order; cannot resume");
+        }
+        ch.position(rowEnd + 1);
+        return done;
+    }
+
+    // Splits one CSV row (without its newline) into fields, undoing the quoting
+    private static List<String> parseRow(String row) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < row.length() && row.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static void drain(FileChannel ch, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) ch.write(buf);
+        buf.clear();
+    }
 }
 
 /**
@@ -143,31 +762,68 @@ class Department {
 public class Assignment6_YourName {
 
     // Static method: calculate total payroll
-    public static double calculateCompanyPayroll(Employee[] employees) {
-        double total = 0;
-        for (Employee e : employees) {
-            total += e.calculateSalary() + e.calculateBonus();
-        }
-        return total;
+    public static double calculateCompanyPayroll(PayrollRun run) {
+        return run.getTotalPayroll();
     }
 
     // Static method: department-wise expenses
-    public static void getDepartmentWiseExpenses(Department[] departments) {
+    public static void getDepartmentWiseExpenses(Department[] departments, PayrollRun run) {
         System.out.println("----- Department-wise Expenses -----");
         for (Department d : departments) {
-            System.out.println(d.getDeptName() + " Expense: " + d.calculateDepartmentExpense());
+            System.out.println(d.getDeptName() + " Expense: " + d.calculateDepartmentExpense(run));
         }
     }
 
     // Static method: attendance report
-    public static void getAttendanceReport(Employee[] employees) {
+    public static void getAttendanceReport(Employee[] employees, PayrollRun run) {
         System.out.println("----- Attendance Report -----");
         for (Employee e : employees) {
-            System.out.println(e.getEmpName() + " - Salary based on attendance: " + e.calculateSalary());
+            System.out.println(e.getEmpName() + " - Salary based on attendance: " + run.getSalary(e));
+        }
+    }
+
+    // Static method: budget vs actual from the organization index
+    public static void getBudgetReport(OrgIndex org, Department[] departments) {
+        System.out.println("----- Budget vs Actual -----");
+        for (Department d : departments) {
+            System.out.println(d.getDeptName() + " (" + org.getHeadcount(d) + " employees) Budget: " +
+                    org.getBudget(d) + ", Actual: " + org.getActual(d) + ", Variance: " + org.getVariance(d));
         }
     }
 
-    public static void main(String[] args) {
+    // Benchmark: payslip throughput to a CSV file
+    public static void benchmarkPayslips(int count) throws IOException {
+        Employee[] staff = new Employee[count];
+        int days = Employee.workingDaysPerMonth;
+        long[] fullMonth = {(1L << days) - 1};
+        for (int i = 0; i < count; i++) {
+            staff[i] = new Employee("E" + i, "Employee " + i, "Dept" + (i % 20), "Engineer", 30000 + i % 50000, "2024-01-01");
+            staff[i].loadAttendance(0, fullMonth, days - (i % 5));
+        }
+        PayrollRun run = PayrollRun.run("bench", staff);
+        Path file = Files.createTempFile("payslips", ".csv");
+        try {
+            long start = System.nanoTime();
+            PayslipWriter.write(run, staff, file);
+            long ms = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            System.out.println("Payslip benchmark: " + count + " payslips in " + ms + " ms (" +
+                    (count * 1000L / ms) + "/s, " + (Files.size(file) >> 20) + " MB)");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // End-to-end benchmarks at full size (main --bench, or ./gradlew benchmarks)
+    static void runBenchmarks() throws IOException {
+        benchmarkPayslips(10_000_000);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--bench")) {
+            runBenchmarks();
+            return;
+        }
+
         // Create employees
         Employee e1 = new Employee("E101", "Alice", "IT", "Developer", 50000, "2023-01-01");
         Employee e2 = new Employee("E102", "Bob", "HR", "HR Manager", 60000, "2022-05-15");
@@ -178,14 +834,17 @@ public class Assignment6_YourName {
         for (int i = 1; i <= 25; i++) e2.markAttendance(i, true);
         for (int i = 1; i <= 20; i++) e3.markAttendance(i, true);
 
-        // Generate payslips
-        e1.generatePaySlip();
-        e2.generatePaySlip();
-        e3.generatePaySlip();
+        // Run payroll once for the month, then generate payslips from it
+        Employee[] employees = {e1, e2, e3};
+        PayrollRun payroll = PayrollRun.run("2025-09", employees);
+        e1.generatePaySlip(payroll);
+        e2.generatePaySlip(payroll);
+        e3.generatePaySlip(payroll);
 
-        // Request leave
-        e1.requestLeave(3);
-        e2.requestLeave(6);
+        // Request leave (next month)
+        e1.requestLeave(32, 3);
+        e2.requestLeave(32, 6);
+        System.out.println("IT out on day 33: " + Employee.leaveEngine.whoIsOut(32, "IT").size() + " employee(s)");
 
         // Create departments
         Department d1 = new Department("D01", "IT", e1, new Employee[]{e1}, 1000000);
@@ -193,11 +852,22 @@ public class Assignment6_YourName {
         Department d3 = new Department("D03", "Finance", e3, new Employee[]{e3}, 700000);
 
         // Company payroll and reports
-        Employee[] employees = {e1, e2, e3};
         Department[] departments = {d1, d2, d3};
 
-        System.out.println("Total Company Payroll: " + calculateCompanyPayroll(employees));
-        getDepartmentWiseExpenses(departments);
-        getAttendanceReport(employees);
+        System.out.println("Total Company Payroll: " + calculateCompanyPayroll(payroll));
+        System.out.println("Total Salary Expense: " + Employee.totalSalaryExpense);
+        getDepartmentWiseExpenses(departments, payroll);
+        getAttendanceReport(employees, payroll);
+
+        // Organization index with rollups under a company-level department
+        Department company = new Department("D00", Employee.companyName, null, new Employee[0], 0);
+        OrgIndex org = new OrgIndex();
+        org.addDepartment(company, null);
+        for (Department d : departments) org.addDepartment(d, company);
+        getBudgetReport(org, new Department[]{company, d1, d2, d3});
+
+        // Attendance updates flow into the rollups incrementally
+        for (int i = 21; i <= 27; i++) e3.markAttendance(i, true);
+        getBudgetReport(org, new Department[]{company, d3});
     }
 }
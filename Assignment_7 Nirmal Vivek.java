@@ -4,6 +4,47 @@
  */
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.Instant;
+
+/**
+ * Vehicle classes, used as an index into per-class cost tables
+ */
+enum VehicleClass { CAR, BUS, TRUCK }
+
+/**
+ * Fuel types, used as an index into fuel price tables.
+ * OTHER covers anything else (hybrid, LPG, ...) and has no fuel price curve.
+ */
+enum FuelType {
+    PETROL, DIESEL, CNG, ELECTRIC, OTHER;
+
+    public static FuelType of(String name) {
+        if (name == null) return OTHER;
+        switch (name.trim().toUpperCase()) {
+            case "PETROL": return PETROL;
+            case "DIESEL": return DIESEL;
+            case "CNG": return CNG;
+            case "ELECTRIC": return ELECTRIC;
+            default: return OTHER;
+        }
+    }
+}
+
+/**
+ * Vehicle status, with the label shown in reports
+ */
+enum VehicleStatus {
+    AVAILABLE("Available"), ASSIGNED("Assigned"), UNDER_MAINTENANCE("Under Maintenance");
+
+    final String label;
+
+    VehicleStatus(String label) { this.label = label; }
+}
 
 /**
  * Base Vehicle Class
@@ -15,60 +56,205 @@ abstract class Vehicle {
     protected int year;
     protected double mileage;
     protected String fuelType;
-    protected String currentStatus;
+    protected final VehicleClass vehicleClass;
+    protected final FuelType fuel;
+    protected volatile VehicleStatus status;
     protected Driver assignedDriver;
     protected double runningCost;
+    protected double unloggedCost; // part of runningCost from trips driven while no trip log was set
     protected double fuelConsumed;
+    protected double lastServiceMileage;
+    protected long lastServiceDay; // epoch day
+    protected MaintenanceScheduler scheduler; // null until registered
+    MaintenanceScheduler.Key kmLeftKey;  // where the scheduler's km-left index holds the vehicle
+    MaintenanceScheduler.Key serviceDayKey; // where the scheduler's service-day index holds the vehicle
+    protected FleetRegistry registry; // null until registered
 
     // Static variables
     public static int totalVehicles = 0;
     public static double fleetValue = 0;
     public static String companyName = "TransFleet Logistics";
-    public static double totalFuelConsumption = 0;
+    public static double serviceIntervalKm = 10000;
+    public static int serviceIntervalDays = 180;
+    private static final DoubleAdder totalFuelConsumption = new DoubleAdder();
+    private static volatile CostModel costModel = new CostModel();
+    private static volatile TripLog tripLog; // null unless trip history is recorded
 
     // Constructor
-    public Vehicle(String vehicleId, String brand, String model, int year, double mileage, String fuelType) {
+    public Vehicle(String vehicleId, String brand, String model, int year, double mileage, String fuelType,
+                   VehicleClass vehicleClass) {
         this.vehicleId = vehicleId;
         this.brand = brand;
         this.model = model;
         this.year = year;
         this.mileage = mileage;
         this.fuelType = fuelType;
-        this.currentStatus = "Available";
+        this.vehicleClass = vehicleClass;
+        this.fuel = FuelType.of(fuelType);
+        this.status = VehicleStatus.AVAILABLE;
         this.runningCost = 0;
         this.fuelConsumed = 0;
+        this.lastServiceMileage = mileage; // assume serviced when added to the fleet
+        this.lastServiceDay = LocalDate.now().toEpochDay();
         totalVehicles++;
     }
 
     // Assign Driver
     public void assignDriver(Driver driver) {
-        this.assignedDriver = driver;
-        driver.assignVehicle(this);
-        this.currentStatus = "Assigned";
-        System.out.println("Driver " + driver.getDriverName() + " assigned to vehicle " + vehicleId);
+        if (!driver.canDrive(this)) {
+            System.out.println("Driver " + driver.getDriverName() + " (" + driver.getLicenseType() +
+                    ") is not licensed for " + getVehicleType() + " " + vehicleId);
+        } else if (!bindDriver(driver)) {
+            System.out.println("Vehicle " + vehicleId + " is under maintenance, cannot assign a driver.");
+        } else {
+            System.out.println("Driver " + driver.getDriverName() + " assigned to vehicle " + vehicleId);
+        }
+    }
+
+    // Links driver and vehicle, releasing whatever either of them was assigned to before.
+    // Both vehicles are locked in a fixed order (by id), so two swaps cannot deadlock.
+    boolean bindDriver(Driver driver) {
+        while (true) {
+            Vehicle previous = driver.getAssignedVehicle();
+            Vehicle first = this, second = previous == null ? this : previous;
+            if (lockBefore(second, first)) {
+                first = second;
+                second = this;
+            }
+            synchronized (first) {
+                synchronized (second) {
+                    // The driver only changes vehicle under that vehicle's lock, so this check holds
+                    if (driver.getAssignedVehicle() != previous) continue;
+                    if (status == VehicleStatus.UNDER_MAINTENANCE) return false;
+                    if (previous != null && previous != this) previous.releaseDriver();
+                    if (assignedDriver != null && assignedDriver != driver) assignedDriver.assignVehicle(null);
+                    this.assignedDriver = driver;
+                    driver.assignVehicle(this);
+                    setStatus(VehicleStatus.ASSIGNED);
+                    return true;
+                }
+            }
+        }
+    }
+
+    private static boolean lockBefore(Vehicle a, Vehicle b) {
+        int c = a.vehicleId.compareTo(b.vehicleId);
+        return c != 0 ? c < 0 : System.identityHashCode(a) < System.identityHashCode(b);
+    }
+
+    public synchronized void releaseDriver() {
+        if (assignedDriver != null) {
+            assignedDriver.assignVehicle(null);
+            assignedDriver = null;
+        }
+        if (status == VehicleStatus.ASSIGNED) setStatus(VehicleStatus.AVAILABLE);
+    }
+
+    public Driver getAssignedDriver() {
+        return assignedDriver;
     }
 
     // Schedule Maintenance
-    public void scheduleMaintenance() {
-        this.currentStatus = "Under Maintenance";
+    public synchronized void scheduleMaintenance() {
+        setStatus(VehicleStatus.UNDER_MAINTENANCE);
         System.out.println("Vehicle " + vehicleId + " scheduled for maintenance.");
     }
 
-    // Update Mileage
+    // Update Mileage (one call may carry a whole batch of trips)
+    // Each trip is charged for its own distance, not the odometer total
     public void updateMileage(double km, double fuelUsed) {
+        updateMileage(km, fuelUsed, -1);
+    }
+
+    // routeId tags the trip in the trip log (-1 when unknown)
+    public void updateMileage(double km, double fuelUsed, int routeId) {
+        updateMileage(km, fuelUsed, routeId, LocalDate.now().toEpochDay());
+    }
+
+    // day is when the trips were driven, so they are priced on that day's fuel price
+    public synchronized void updateMileage(double km, double fuelUsed, int routeId, long day) {
         this.mileage += km;
         this.fuelConsumed += fuelUsed;
-        totalFuelConsumption += fuelUsed;
-        this.runningCost += calculateRunningCost();
+        totalFuelConsumption.add(fuelUsed);
+        double cost = costModel.tripCost(vehicleClass, fuel, km, fuelUsed, day);
+        this.runningCost += cost;
+        TripLog log = tripLog;
+        if (log != null) {
+            log.append(this, km, fuelUsed, day, routeId);
+        } else {
+            this.unloggedCost += cost;
+        }
+        // Re-keys the vehicle in the scheduler's km-left index, O(log n)
+        if (scheduler != null) scheduler.onMileage(this);
+    }
+
+    // Records a completed service (also used to load service history)
+    public synchronized void recordService(double atMileage, long epochDay) {
+        this.lastServiceMileage = atMileage;
+        this.lastServiceDay = epochDay;
+        if (status == VehicleStatus.UNDER_MAINTENANCE) {
+            setStatus(assignedDriver != null ? VehicleStatus.ASSIGNED : VehicleStatus.AVAILABLE);
+        }
+        if (scheduler != null) scheduler.onServiced(this);
+    }
+
+    public double getNextServiceMileage() {
+        return lastServiceMileage + serviceIntervalKm;
+    }
+
+    public long getNextServiceDay() {
+        return lastServiceDay + serviceIntervalDays;
+    }
+
+    public double getMileage() {
+        return mileage;
+    }
+
+    public static void setTripLog(TripLog log) {
+        tripLog = log;
+    }
+
+    public static TripLog getTripLog() {
+        return tripLog;
+    }
+
+    public static CostModel getCostModel() {
+        return costModel;
+    }
+
+    // Cost models are immutable, so swapping the reference is the whole update
+    public static void setCostModel(CostModel model) {
+        costModel = Objects.requireNonNull(model);
+    }
+
+    // Replaces the logged part of the running cost after a bulk recomputation (the caller holds
+    // this vehicle's lock across pricing its trips and this call); cost from trips driven before
+    // the trip log was set is kept
+    synchronized void setLoggedCost(double cost) {
+        this.runningCost = unloggedCost + cost;
+    }
+
+    public static double getTotalFuelConsumption() {
+        return totalFuelConsumption.sum();
     }
 
-    // Check if service due (every 10,000 km)
+    // Check if service due within 500 km (every 10,000 km since the last service)
     public boolean checkServiceDue() {
-        return mileage % 10000 < 500; // due soon within 500 km
+        return getNextServiceMileage() - mileage < 500;
     }
 
-    // Abstract method: Each vehicle type calculates cost differently
-    public abstract double calculateRunningCost();
+    // Cost of driving km today; the rate comes from the cost model's per-class table
+    public double calculateRunningCost(double km) {
+        return costModel.tripCost(vehicleClass, fuel, km, 0, LocalDate.now().toEpochDay());
+    }
+
+    public VehicleClass getVehicleClass() {
+        return vehicleClass;
+    }
+
+    public FuelType getFuel() {
+        return fuel;
+    }
 
     public String getVehicleType() {
         return this.getClass().getSimpleName();
@@ -87,7 +273,19 @@ abstract class Vehicle {
     }
 
     public String getCurrentStatus() {
-        return currentStatus;
+        return status.label;
+    }
+
+    public VehicleStatus getStatus() {
+        return status;
+    }
+
+    // Callers hold this vehicle's lock; the registry moves it to the new status bucket
+    private void setStatus(VehicleStatus newStatus) {
+        VehicleStatus old = status;
+        if (old == newStatus) return;
+        status = newStatus;
+        if (registry != null) registry.onStatusChanged(this, old, newStatus);
     }
 }
 
@@ -98,14 +296,9 @@ class Car extends Vehicle {
     private int passengerCapacity;
 
     public Car(String vehicleId, String brand, String model, int year, double mileage, String fuelType, int passengerCapacity) {
-        super(vehicleId, brand, model, year, mileage, fuelType);
+        super(vehicleId, brand, model, year, mileage, fuelType, VehicleClass.CAR);
         this.passengerCapacity = passengerCapacity;
     }
-
-    @Override
-    public double calculateRunningCost() {
-        return 5.0 * mileage; // Example: ₹5 per km
-    }
 }
 
 /**
@@ -115,14 +308,9 @@ class Bus extends Vehicle {
     private int seatingCapacity;
 
     public Bus(String vehicleId, String brand, String model, int year, double mileage, String fuelType, int seatingCapacity) {
-        super(vehicleId, brand, model, year, mileage, fuelType);
+        super(vehicleId, brand, model, year, mileage, fuelType, VehicleClass.BUS);
         this.seatingCapacity = seatingCapacity;
     }
-
-    @Override
-    public double calculateRunningCost() {
-        return 8.0 * mileage; // Example: ₹8 per km
-    }
 }
 
 /**
@@ -132,13 +320,524 @@ class Truck extends Vehicle {
     private double loadCapacity; // in tons
 
     public Truck(String vehicleId, String brand, String model, int year, double mileage, String fuelType, double loadCapacity) {
-        super(vehicleId, brand, model, year, mileage, fuelType);
+        super(vehicleId, brand, model, year, mileage, fuelType, VehicleClass.TRUCK);
         this.loadCapacity = loadCapacity;
     }
+}
+
+/**
+ * Running-cost model.
+ * Per-km rates are a table indexed by VehicleClass, so a trip is priced
+ * without a virtual call. The rates assume the reference fuel price; when a
+ * fuel price curve says fuel cost more or less on the trip's day, the
+ * difference is charged on the fuel actually used. A model never changes once
+ * built: the with* methods return a changed copy, so a model shared by
+ * vehicles and scenarios can be read without locks.
+ */
+class CostModel {
+    private final double[] ratePerKm;
+    private final double[] referencePrice;
+    private final FuelPriceCurve[] curves;
+
+    public CostModel() {
+        ratePerKm = new double[VehicleClass.values().length];
+        referencePrice = new double[FuelType.values().length];
+        curves = new FuelPriceCurve[FuelType.values().length];
+        ratePerKm[VehicleClass.CAR.ordinal()] = 5.0;    // ₹5 per km
+        ratePerKm[VehicleClass.BUS.ordinal()] = 8.0;    // ₹8 per km
+        ratePerKm[VehicleClass.TRUCK.ordinal()] = 12.0; // ₹12 per km
+        referencePrice[FuelType.PETROL.ordinal()] = 100.0;
+        referencePrice[FuelType.DIESEL.ordinal()] = 90.0;
+        referencePrice[FuelType.CNG.ordinal()] = 80.0;
+        referencePrice[FuelType.ELECTRIC.ordinal()] = 10.0;
+    }
+
+    private CostModel(CostModel from) {
+        ratePerKm = from.ratePerKm.clone();
+        referencePrice = from.referencePrice.clone();
+        curves = from.curves.clone();
+    }
+
+    public CostModel withRatePerKm(VehicleClass c, double rate) {
+        CostModel m = new CostModel(this);
+        m.ratePerKm[c.ordinal()] = rate;
+        return m;
+    }
+
+    // OTHER has no reference price, so it cannot be given a curve
+    public CostModel withFuelPriceCurve(FuelType f, FuelPriceCurve curve) {
+        if (f == FuelType.OTHER) throw new IllegalArgumentException("No fuel price curve for " + f);
+        CostModel m = new CostModel(this);
+        m.curves[f.ordinal()] = curve;
+        return m;
+    }
+
+    public double getRatePerKm(VehicleClass c) {
+        return ratePerKm[c.ordinal()];
+    }
+
+    public double tripCost(VehicleClass c, FuelType f, double km, double fuelUsed, long epochDay) {
+        return tripCost(c.ordinal(), f.ordinal(), km, fuelUsed, epochDay);
+    }
+
+    // Primitive form used by the bulk passes
+    public double tripCost(int vehicleClass, int fuelType, double km, double fuelUsed, long epochDay) {
+        double cost = ratePerKm[vehicleClass] * km;
+        FuelPriceCurve curve = curves[fuelType];
+        if (curve != null) cost += fuelUsed * (curve.priceOn(epochDay) - referencePrice[fuelType]);
+        return cost;
+    }
+
+    // Recomputes every vehicle's running cost from its full trip history, vehicles in parallel.
+    // updateMileage logs a trip under its vehicle's lock, so pricing the trips and replacing the
+    // cost under that same lock cannot drop a trip driven in between.
+    public void recomputeFleet(TripLog log) {
+        log.allTrips().parallelStream().forEach(trips -> {
+            synchronized (trips.vehicle) {
+                trips.vehicle.setLoggedCost(trips.cost(this));
+            }
+        });
+    }
+}
+
+/**
+ * Fuel price over time: piecewise linear between (epochDay, price) points,
+ * flat before the first and after the last point.
+ */
+class FuelPriceCurve {
+    private final long[] days;
+    private final double[] prices;
+
+    public FuelPriceCurve(long[] days, double[] prices) {
+        if (days.length == 0 || days.length != prices.length) {
+            throw new IllegalArgumentException("Need matching, non-empty days and prices");
+        }
+        this.days = days.clone();
+        this.prices = prices.clone();
+    }
+
+    public static FuelPriceCurve flat(double price) {
+        return new FuelPriceCurve(new long[]{0}, new double[]{price});
+    }
+
+    // The same curve with every price multiplied by factor
+    public FuelPriceCurve scaled(double factor) {
+        double[] p = prices.clone();
+        for (int i = 0; i < p.length; i++) p[i] *= factor;
+        return new FuelPriceCurve(days, p);
+    }
+
+    public double priceOn(long day) {
+        int i = Arrays.binarySearch(days, day);
+        if (i >= 0) return prices[i];
+        int next = -i - 1;
+        if (next == 0) return prices[0];
+        if (next == days.length) return prices[days.length - 1];
+        double t = (double) (day - days[next - 1]) / (days[next] - days[next - 1]);
+        return prices[next - 1] + t * (prices[next] - prices[next - 1]);
+    }
+}
+
+/**
+ * Columnar trip history. Each vehicle's trips are primitive arrays behind that
+ * vehicle's own lock, so appends for different vehicles never contend (there
+ * is no log-wide lock on the updateMileage path); bulk passes go vehicle by
+ * vehicle and run in parallel.
+ */
+class TripLog {
+    // One vehicle's trips. Rows below size never change, so passes take the
+    // array references and size under the lock and read the rows unlocked.
+    static final class Trips {
+        final Vehicle vehicle;
+        final byte vehicleClass;
+        final byte fuelType;
+        private double[] km = new double[16];
+        private double[] fuel = new double[16];
+        private long[] day = new long[16];
+        private int[] route = new int[16];
+        private int size = 0;
+
+        Trips(Vehicle v) {
+            this.vehicle = v;
+            this.vehicleClass = (byte) v.getVehicleClass().ordinal();
+            this.fuelType = (byte) v.getFuel().ordinal();
+        }
+
+        synchronized void add(double tripKm, double fuelUsed, long epochDay, int routeId) {
+            if (size == km.length) {
+                int cap = size * 2;
+                km = Arrays.copyOf(km, cap);
+                fuel = Arrays.copyOf(fuel, cap);
+                day = Arrays.copyOf(day, cap);
+                route = Arrays.copyOf(route, cap);
+            }
+            km[size] = tripKm;
+            fuel[size] = fuelUsed;
+            day[size] = epochDay;
+            route[size] = routeId;
+            size++;
+        }
+
+        synchronized int size() { return size; }
+
+        // Cost of every trip so far under the model
+        double cost(CostModel model) {
+            int n;
+            double[] k, f;
+            long[] d;
+            synchronized (this) {
+                n = size;
+                k = km;
+                f = fuel;
+                d = day;
+            }
+            double total = 0;
+            for (int i = 0; i < n; i++) total += model.tripCost(vehicleClass, fuelType, k[i], f[i], d[i]);
+            return total;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Trips> byVehicle = new ConcurrentHashMap<>();
+    private final List<Trips> order = new ArrayList<>(); // in registration order; guarded by itself
+    private final LongAdder size = new LongAdder();
+
+    public void append(Vehicle v, double tripKm, double fuelUsed, long epochDay) {
+        append(v, tripKm, fuelUsed, epochDay, -1);
+    }
+
+    public void append(Vehicle v, double tripKm, double fuelUsed, long epochDay, int routeId) {
+        Trips trips = byVehicle.get(v.getVehicleId());
+        if (trips == null) trips = register(v);
+        trips.add(tripKm, fuelUsed, epochDay, routeId);
+        size.increment();
+    }
+
+    // Only a vehicle's first trip gets here
+    private Trips register(Vehicle v) {
+        synchronized (order) {
+            Trips trips = byVehicle.get(v.getVehicleId());
+            if (trips == null) {
+                trips = new Trips(v);
+                order.add(trips);
+                byVehicle.put(v.getVehicleId(), trips);
+            }
+            return trips;
+        }
+    }
+
+    // Trips of one vehicle, or null if it has none
+    Trips tripsOf(Vehicle v) {
+        return byVehicle.get(v.getVehicleId());
+    }
+
+    // Every vehicle's trips, in registration order
+    List<Trips> allTrips() {
+        synchronized (order) {
+            return new ArrayList<>(order);
+        }
+    }
+
+    // Immutable copy of the trips so far, for simulations
+    public TripDataset snapshot() {
+        List<Trips> all = allTrips();
+        int[] n = new int[all.size()];
+        double[][] k = new double[n.length][], f = new double[n.length][];
+        long[][] d = new long[n.length][];
+        int[][] r = new int[n.length][];
+        int total = 0;
+        for (int v = 0; v < n.length; v++) {
+            Trips t = all.get(v);
+            synchronized (t) {
+                n[v] = t.size;
+                k[v] = t.km;
+                f[v] = t.fuel;
+                d[v] = t.day;
+                r[v] = t.route;
+            }
+            total += n[v];
+        }
+        byte[] cls = new byte[total], ft = new byte[total];
+        double[] km = new double[total], fuel = new double[total];
+        long[] day = new long[total];
+        int[] route = new int[total];
+        int at = 0;
+        for (int v = 0; v < n.length; v++) {
+            Arrays.fill(cls, at, at + n[v], all.get(v).vehicleClass);
+            Arrays.fill(ft, at, at + n[v], all.get(v).fuelType);
+            System.arraycopy(k[v], 0, km, at, n[v]);
+            System.arraycopy(f[v], 0, fuel, at, n[v]);
+            System.arraycopy(d[v], 0, day, at, n[v]);
+            System.arraycopy(r[v], 0, route, at, n[v]);
+            at += n[v];
+        }
+        return new TripDataset(total, cls, ft, km, fuel, day, route);
+    }
+
+    public int size() { return (int) size.sum(); }
+
+    public List<Vehicle> getVehicles() {
+        List<Vehicle> vehicles = new ArrayList<>();
+        for (Trips t : allTrips()) vehicles.add(t.vehicle);
+        return vehicles;
+    }
+
+    // Trip cost per vehicle, in getVehicles() order; vehicles are priced in parallel
+    public double[] costPerVehicle(CostModel model) {
+        return allTrips().parallelStream().mapToDouble(t -> t.cost(model)).toArray();
+    }
+}
+
+/**
+ * Read-only columnar trip dataset shared by all simulation scenarios.
+ */
+final class TripDataset {
+    final int size;
+    final byte[] vehicleClass;
+    final byte[] fuelType;
+    final double[] km;
+    final double[] fuel;
+    final long[] day;
+    final int[] route;
+    final int routeCount; // highest route id + 1
+
+    public TripDataset(int size, byte[] vehicleClass, byte[] fuelType, double[] km, double[] fuel,
+                       long[] day, int[] route) {
+        this.size = size;
+        this.vehicleClass = vehicleClass;
+        this.fuelType = fuelType;
+        this.km = km;
+        this.fuel = fuel;
+        this.day = day;
+        this.route = route;
+        int maxRoute = -1;
+        for (int i = 0; i < size; i++) maxRoute = Math.max(maxRoute, route[i]);
+        this.routeCount = maxRoute + 1;
+    }
+}
+
+/**
+ * A what-if scenario: a cost model (rates and fuel prices) and routes moved
+ * to a different vehicle class. Each moved route keeps its own fuel type and
+ * fuel multiplier, so two routes moved to the same class don't share them.
+ */
+class Scenario {
+    // Where one route's trips run in this scenario
+    static final class RouteMove {
+        final VehicleClass to;
+        final FuelType fuel;
+        final double fuelFactor;
+
+        RouteMove(VehicleClass to, FuelType fuel, double fuelFactor) {
+            this.to = to;
+            this.fuel = fuel;
+            this.fuelFactor = fuelFactor;
+        }
+    }
+
+    final String name;
+    final CostModel model;
+    final Map<Integer, RouteMove> moves = new HashMap<>();
+    double maintenanceFactor = 0.05; // same 5% as calculateTotalMaintenanceCost
+
+    public Scenario(String name, CostModel model) {
+        this.name = name;
+        this.model = model;
+    }
+
+    // Runs a route on another vehicle class burning `fuel`; fuelFactor scales the fuel of its trips
+    public Scenario moveRoute(int routeId, VehicleClass to, FuelType fuel, double fuelFactor) {
+        moves.put(routeId, new RouteMove(to, fuel, fuelFactor));
+        return this;
+    }
+
+    public Scenario setMaintenanceFactor(double factor) {
+        this.maintenanceFactor = factor;
+        return this;
+    }
+}
+
+/**
+ * Result of replaying the trip dataset under one scenario.
+ */
+class ScenarioResult {
+    final String name;
+    final double runningCost;
+    final double maintenanceCost;
+    final double[] costByClass;
+
+    ScenarioResult(String name, double runningCost, double maintenanceCost, double[] costByClass) {
+        this.name = name;
+        this.runningCost = runningCost;
+        this.maintenanceCost = maintenanceCost;
+        this.costByClass = costByClass;
+    }
+
+    public double getTotalCost() {
+        return runningCost + maintenanceCost;
+    }
 
     @Override
-    public double calculateRunningCost() {
-        return 12.0 * mileage; // Example: ₹12 per km
+    public String toString() {
+        return String.format("%s: running %.2f, maintenance %.2f, total %.2f", name, runningCost, maintenanceCost,
+                getTotalCost());
+    }
+}
+
+/**
+ * Replays one trip dataset against many scenarios in parallel on a fork-join
+ * pool. Each scenario is one pass over the shared columns; nothing is copied.
+ */
+class SimulationEngine {
+    private final TripDataset trips;
+    private final ForkJoinPool pool;
+
+    public SimulationEngine(TripDataset trips, int parallelism) {
+        this.trips = trips;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    public List<ScenarioResult> run(List<Scenario> scenarios) {
+        try {
+            return pool.submit(() -> scenarios.parallelStream().map(this::replay).collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Simulation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Simulation failed", e.getCause());
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    ScenarioResult replay(Scenario sc) {
+        // Per-route overrides as flat arrays, so the trip loop does no map lookups
+        byte[] override = new byte[trips.routeCount];
+        byte[] overrideFuel = new byte[trips.routeCount];
+        double[] overrideFactor = new double[trips.routeCount];
+        Arrays.fill(override, (byte) -1);
+        for (Map.Entry<Integer, Scenario.RouteMove> e : sc.moves.entrySet()) {
+            int r = e.getKey();
+            if (r < 0 || r >= override.length) continue;
+            override[r] = (byte) e.getValue().to.ordinal();
+            overrideFuel[r] = (byte) e.getValue().fuel.ordinal();
+            overrideFactor[r] = e.getValue().fuelFactor;
+        }
+
+        double[] byClass = new double[VehicleClass.values().length];
+        byte[] cls = trips.vehicleClass;
+        byte[] ft = trips.fuelType;
+        double[] km = trips.km;
+        double[] fuel = trips.fuel;
+        long[] day = trips.day;
+        int[] route = trips.route;
+        for (int i = 0; i < trips.size; i++) {
+            int c = cls[i];
+            int t = ft[i];
+            double f = fuel[i];
+            int r = route[i];
+            if (r >= 0 && override[r] >= 0) {
+                c = override[r];
+                t = overrideFuel[r];
+                f *= overrideFactor[r];
+            }
+            byClass[c] += sc.model.tripCost(c, t, km[i], f, day[i]);
+        }
+
+        double running = 0;
+        for (double c : byClass) running += c;
+        return new ScenarioResult(sc.name, running, running * sc.maintenanceFactor, byClass);
+    }
+}
+
+/**
+ * Maintenance scheduler.
+ * Vehicles sit in two concurrent skip lists: one ordered by km left to the
+ * next service, re-keyed by updateMileage under the vehicle's lock, and one by
+ * next service day, re-keyed only on service. "Due within X km" and "due by
+ * day Y" both walk the front of their list, so they cost the size of the
+ * answer rather than the fleet. Nothing here takes a scheduler-wide lock.
+ */
+class MaintenanceScheduler {
+    // Index entries are immutable: re-keying replaces the entry, so a node that is still being
+    // unlinked never changes its order under a concurrent reader
+    static final class Key implements Comparable<Key> {
+        final double value;
+        final Vehicle vehicle;
+
+        Key(double value, Vehicle vehicle) {
+            this.value = value;
+            this.vehicle = vehicle;
+        }
+
+        @Override
+        public int compareTo(Key o) {
+            int c = Double.compare(value, o.value);
+            return c != 0 ? c : vehicle.getVehicleId().compareTo(o.vehicle.getVehicleId());
+        }
+    }
+
+    private final Set<Vehicle> vehicles = ConcurrentHashMap.newKeySet();
+    private final ConcurrentSkipListSet<Key> byKmLeft = new ConcurrentSkipListSet<>();
+    private final ConcurrentSkipListSet<Key> byServiceDay = new ConcurrentSkipListSet<>();
+
+    public void register(Vehicle v) {
+        synchronized (v) {
+            if (!vehicles.add(v)) return;
+            v.scheduler = this;
+            onServiced(v);
+        }
+    }
+
+    // Called by Vehicle under its own lock after its mileage changes
+    void onMileage(Vehicle v) {
+        if (v.kmLeftKey != null) byKmLeft.remove(v.kmLeftKey);
+        v.kmLeftKey = new Key(v.getNextServiceMileage() - v.getMileage(), v);
+        byKmLeft.add(v.kmLeftKey);
+    }
+
+    // Called by Vehicle under its own lock (or from register) after a service
+    void onServiced(Vehicle v) {
+        onMileage(v);
+        long day = v.getNextServiceDay();
+        if (v.serviceDayKey == null || v.serviceDayKey.value != day) {
+            if (v.serviceDayKey != null) byServiceDay.remove(v.serviceDayKey);
+            v.serviceDayKey = new Key(day, v);
+            byServiceDay.add(v.serviceDayKey);
+        }
+    }
+
+    // Vehicles due within km kilometres (fewest km left first), then those due by the given day
+    public List<Vehicle> dueWithin(double km, long byDay) {
+        List<Vehicle> result = new ArrayList<>();
+        Set<Vehicle> seen = new HashSet<>();
+        for (Key k : byKmLeft) {
+            if (k.value >= km) break;
+            if (seen.add(k.vehicle)) result.add(k.vehicle);
+        }
+        for (Key k : byServiceDay) {
+            if (k.value > byDay) break;
+            if (seen.add(k.vehicle)) result.add(k.vehicle);
+        }
+        return result;
+    }
+
+    // Books due vehicles into service bays, baysPerDay per day starting at startDay
+    public Map<Long, List<Vehicle>> planBays(double km, long byDay, long startDay, int baysPerDay) {
+        if (baysPerDay <= 0) throw new IllegalArgumentException("baysPerDay must be positive");
+        Map<Long, List<Vehicle>> plan = new TreeMap<>();
+        long day = startDay;
+        for (Vehicle v : dueWithin(km, byDay)) {
+            List<Vehicle> bays = plan.computeIfAbsent(day, d -> new ArrayList<>());
+            bays.add(v);
+            if (bays.size() == baysPerDay) day++;
+        }
+        return plan;
+    }
+
+    public int size() {
+        return vehicles.size();
     }
 }
 
@@ -149,7 +848,7 @@ class Driver {
     private String driverId;
     private String driverName;
     private String licenseType;
-    private Vehicle assignedVehicle;
+    private volatile Vehicle assignedVehicle; // written only under the old and new vehicle's locks
     private int totalTrips;
 
     public Driver(String driverId, String driverName, String licenseType) {
@@ -159,15 +858,39 @@ class Driver {
         this.totalTrips = 0;
     }
 
-    public void assignVehicle(Vehicle vehicle) {
+    // Called by Vehicle while it holds the lock of the vehicle being left and the one being taken
+    void assignVehicle(Vehicle vehicle) {
         this.assignedVehicle = vehicle;
     }
 
+    // LMV covers cars; HMV covers buses and trucks as well as cars
+    public boolean canDrive(Vehicle vehicle) {
+        if (licenseType.equalsIgnoreCase("HMV")) return true;
+        return licenseType.equalsIgnoreCase("LMV") && vehicle.getVehicleClass() == VehicleClass.CAR;
+    }
+
+    public Vehicle getAssignedVehicle() {
+        return assignedVehicle;
+    }
+
+    public String getDriverId() {
+        return driverId;
+    }
+
+    public String getLicenseType() {
+        return licenseType;
+    }
+
     public void recordTrip(double distance, double fuelUsed) {
-        if (assignedVehicle != null) {
-            assignedVehicle.updateMileage(distance, fuelUsed);
+        recordTrip(distance, fuelUsed, -1);
+    }
+
+    public void recordTrip(double distance, double fuelUsed, int routeId) {
+        Vehicle vehicle = assignedVehicle;
+        if (vehicle != null) {
+            vehicle.updateMileage(distance, fuelUsed, routeId);
             totalTrips++;
-            System.out.println(driverName + " completed trip of " + distance + " km in vehicle " + assignedVehicle.getVehicleId());
+            System.out.println(driverName + " completed trip of " + distance + " km in vehicle " + vehicle.getVehicleId());
         } else {
             System.out.println(driverName + " has no vehicle assigned.");
         }
@@ -182,18 +905,657 @@ class Driver {
     }
 }
 
+/**
+ * Bulk driver-to-vehicle assignment (auction algorithm with epsilon scaling).
+ * Licences are checked per vehicle class, not per pair, and each driver keeps
+ * only its CANDIDATES cheapest licensed vehicles in a sparse row (vehicles
+ * under maintenance are left out), so memory is O(n * CANDIDATES) instead of
+ * a dense n x m matrix. Pruning alone can strand drivers when costs are
+ * correlated (every driver prefers the same few vehicles), so a driver left
+ * on its unassigned slot while a licensed vehicle is still free gets a full
+ * row of every licensed vehicle and bids again. The result is exact for the
+ * pruned rows plus the widened ones, not for the dense matrix.
+ *
+ * The problem is made square so epsilon scaling stays exact: every driver has
+ * an "unassigned" slot (cost UNASSIGNED) and every vehicle has an "idle"
+ * bidder that can keep the vehicle or take any driver's unassigned slot at no
+ * cost. Idle bidders only ever want the cheapest slot, so slots sit in a
+ * min-heap on price instead of a dense row. Bidders raise the price of their
+ * best choice by the margin over their second choice plus epsilon; epsilon
+ * shrinks phase by phase and the last phase is exact for integer costs. When a
+ * vehicle goes into maintenance only its driver bids again, at current prices.
+ */
+class AssignmentOptimizer {
+    public interface CostFunction {
+        double cost(Driver driver, Vehicle vehicle);
+    }
+
+    public static final int CANDIDATES = 64; // cheapest licensed vehicles kept per driver
+    private static final double UNASSIGNED = 1e6;
+    private static final double SCALE_FACTOR = 5;
+    private static final int NONE = -1;
+
+    private final Driver[] drivers;
+    private final Vehicle[] vehicles;
+    private final int n; // drivers: bidders 0 .. n-1, unassigned slots are objects k .. k+n-1
+    private final int k; // vehicles: objects 0 .. k-1, idle bidders n .. n+k-1
+    private final int[] rowStart; // driver i's vehicles are entries rowStart[i] .. rowStart[i + 1] - 1
+    private final int[] col;
+    private final float[] cost;
+    private final int[][] wideCol; // full row of a driver that was stranded by pruning, else null
+    private final float[][] wideCost;
+    private final CostFunction costFn;
+    private final List<List<Integer>> byClass; // unblocked vehicle indexes per vehicle class
+    private final Vehicle[] sample;             // one vehicle per class, for licence checks
+    private final double[] price; // per object
+    private final int[] owner;    // bidder holding each object, or NONE
+    private final int[] holds;    // object held by each bidder, or NONE
+    private final boolean[] blocked;
+    private final int[] slotHeap; // unassigned slots (driver index) as a min-heap on price
+    private final int[] slotPos;
+    private final double finalEpsilon;
+    private int[] applied; // assignment last applied to the vehicles
+
+    public AssignmentOptimizer(Driver[] drivers, Vehicle[] vehicles, CostFunction costFn) {
+        this.drivers = drivers;
+        this.vehicles = vehicles;
+        this.n = drivers.length;
+        this.k = vehicles.length;
+        this.costFn = costFn;
+
+        // Vehicles grouped by class, so a driver only looks at classes their licence covers
+        int classes = VehicleClass.values().length;
+        this.byClass = new ArrayList<>();
+        this.sample = new Vehicle[classes];
+        for (int c = 0; c < classes; c++) byClass.add(new ArrayList<>());
+        this.blocked = new boolean[k];
+        for (int j = 0; j < k; j++) {
+            if (isInMaintenance(vehicles[j])) {
+                blocked[j] = true;
+                continue;
+            }
+            int c = vehicles[j].getVehicleClass().ordinal();
+            byClass.get(c).add(j);
+            if (sample[c] == null) sample[c] = vehicles[j];
+        }
+
+        this.rowStart = new int[n + 1];
+        int[] cols = new int[Math.min(k, CANDIDATES) * n];
+        float[] costs = new float[cols.length];
+        int[] heapCol = new int[CANDIDATES];
+        float[] heapCost = new float[CANDIDATES];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            int h = 0; // max-heap on cost of the cheapest vehicles seen so far
+            for (int c = 0; c < classes; c++) {
+                if (sample[c] == null || !drivers[i].canDrive(sample[c])) continue;
+                for (int j : byClass.get(c)) {
+                    float x = (float) costFn.cost(drivers[i], vehicles[j]);
+                    if (h < CANDIDATES) {
+                        heapCol[h] = j;
+                        heapCost[h] = x;
+                        siftUp(heapCol, heapCost, h++);
+                    } else if (x < heapCost[0]) {
+                        heapCol[0] = j;
+                        heapCost[0] = x;
+                        siftDown(heapCol, heapCost, h);
+                    }
+                }
+            }
+            System.arraycopy(heapCol, 0, cols, size, h);
+            System.arraycopy(heapCost, 0, costs, size, h);
+            size += h;
+            rowStart[i + 1] = size;
+        }
+        this.col = Arrays.copyOf(cols, size);
+        this.cost = Arrays.copyOf(costs, size);
+        this.wideCol = new int[n][];
+        this.wideCost = new float[n][];
+
+        this.price = new double[k + n];
+        this.owner = new int[k + n];
+        this.holds = new int[n + k];
+        this.slotHeap = new int[n];
+        this.slotPos = new int[n];
+        this.finalEpsilon = 1.0 / (n + k + 1); // exact when costs are integers
+        this.applied = new int[n];
+        Arrays.fill(applied, -1);
+    }
+
+    // Vehicle index for each driver, or -1 when the driver stays unassigned
+    public int[] solve() {
+        do {
+            auction();
+        } while (widenStranded() > 0);
+        return assignment();
+    }
+
+    // All epsilon-scaling phases from zero prices. Widened rows need the full run: bidding them at
+    // the final epsilon from the last prices turns into a price war of tiny increments.
+    private void auction() {
+        Arrays.fill(price, 0);
+        for (int i = 0; i < n; i++) {
+            slotHeap[i] = i;
+            slotPos[i] = i;
+        }
+        double maxCost = 0;
+        for (float c : cost) maxCost = Math.max(maxCost, c);
+        double eps = Math.max(finalEpsilon, (UNASSIGNED + maxCost) / 8);
+        IntQueue queue = new IntQueue(n + k);
+        while (true) {
+            // Each phase starts from scratch but keeps the prices of the last one
+            Arrays.fill(owner, NONE);
+            Arrays.fill(holds, NONE);
+            for (int b = 0; b < n + k; b++) queue.add(b);
+            bid(queue, eps, Long.MAX_VALUE);
+            if (eps <= finalEpsilon) break;
+            eps = Math.max(finalEpsilon, eps / SCALE_FACTOR);
+        }
+    }
+
+    // Takes a vehicle out of the pool and lets only its driver and its idle bidder bid again.
+    // The auction is re-run instead when that repair stops being local (losing the vehicle
+    // pushes a driver off the fleet, and at the final epsilon prices climb to UNASSIGNED in tiny
+    // steps) or leaves a driver stranded next to a free vehicle.
+    public int[] onMaintenance(int vehicleIndex) {
+        blocked[vehicleIndex] = true;
+        int driver = owner[vehicleIndex];
+        int idle = n + vehicleIndex;
+        if (driver == NONE || driver == idle) return assignment();
+        // Only the idle bidder can want a blocked vehicle, so its price can drop to
+        // zero; otherwise idle bidders fight over slots until they reach the old price
+        price[vehicleIndex] = 0;
+        owner[vehicleIndex] = NONE;
+        holds[driver] = NONE;
+        if (holds[idle] != NONE) {
+            owner[holds[idle]] = NONE;
+            holds[idle] = NONE;
+        }
+        IntQueue queue = new IntQueue(4);
+        queue.add(idle);
+        queue.add(driver);
+        if (!bid(queue, finalEpsilon, 4L * (n + k)) || widenStranded() > 0) return solve();
+        return assignment();
+    }
+
+    public int[] assignment() {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) result[i] = holds[i] >= 0 && holds[i] < k ? holds[i] : -1;
+        return result;
+    }
+
+    // Links drivers to vehicles, touching only pairs that changed since the last apply. A vehicle
+    // that went into maintenance after solve() refuses its driver; that pair is not recorded as
+    // applied, so the driver keeps its old vehicle and the pair is tried again on the next apply.
+    public int apply(int[] assignment) {
+        int changed = 0;
+        for (int i = 0; i < n; i++) {
+            int j = assignment[i];
+            if (j == applied[i]) continue;
+            if (j >= 0) {
+                if (!vehicles[j].bindDriver(drivers[i])) continue;
+            } else if (applied[i] >= 0 && vehicles[applied[i]].getAssignedDriver() == drivers[i]) {
+                vehicles[applied[i]].releaseDriver();
+            }
+            applied[i] = j;
+            changed++;
+        }
+        return changed;
+    }
+
+    public double totalCost(int[] assignment) {
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            if (assignment[i] < 0) continue;
+            int[] cols = wideCol[i] != null ? wideCol[i] : col;
+            float[] costs = wideCol[i] != null ? wideCost[i] : cost;
+            int from = wideCol[i] != null ? 0 : rowStart[i];
+            int to = wideCol[i] != null ? cols.length : rowStart[i + 1];
+            for (int e = from; e < to; e++) {
+                if (cols[e] == assignment[i]) total += costs[e];
+            }
+        }
+        return total;
+    }
+
+    // Gives every driver on its unassigned slot a full row when one of its licensed vehicles is
+    // still free (held by its idle bidder). Returns the number of rows widened.
+    private int widenStranded() {
+        int[] free = new int[sample.length]; // free vehicles per class
+        for (int j = 0; j < k; j++) {
+            if (!blocked[j] && owner[j] == n + j) free[vehicles[j].getVehicleClass().ordinal()]++;
+        }
+        int widened = 0;
+        for (int i = 0; i < n; i++) {
+            if (holds[i] != k + i || wideCol[i] != null || !hasFreeLicensedVehicle(i, free)) continue;
+            int count = 0;
+            for (int c = 0; c < sample.length; c++) {
+                if (sample[c] != null && drivers[i].canDrive(sample[c])) count += byClass.get(c).size();
+            }
+            int[] cols = new int[count];
+            float[] costs = new float[count];
+            int e = 0;
+            for (int c = 0; c < sample.length; c++) {
+                if (sample[c] == null || !drivers[i].canDrive(sample[c])) continue;
+                for (int j : byClass.get(c)) {
+                    cols[e] = j;
+                    costs[e++] = (float) costFn.cost(drivers[i], vehicles[j]);
+                }
+            }
+            wideCol[i] = cols;
+            wideCost[i] = costs;
+            widened++;
+        }
+        return widened;
+    }
+
+    private boolean hasFreeLicensedVehicle(int driver, int[] free) {
+        for (int c = 0; c < sample.length; c++) {
+            if (free[c] > 0 && drivers[driver].canDrive(sample[c])) return true;
+        }
+        return false;
+    }
+
+    // Gauss-Seidel auction: queued bidders bid until every bidder holds an object, or until
+    // maxBids bids have been made (then returns false and the assignment is incomplete)
+    private boolean bid(IntQueue queue, double eps, long maxBids) {
+        for (long bids = 0; !queue.isEmpty(); bids++) {
+            if (bids == maxBids) return false;
+            int b = queue.poll();
+            double best, second;
+            int bestObject;
+            if (b < n) {
+                // Driver: candidate vehicles (or its widened row), or its own unassigned slot
+                bestObject = k + b;
+                best = -UNASSIGNED - price[k + b];
+                second = Double.NEGATIVE_INFINITY;
+                int[] cols = col;
+                float[] costs = cost;
+                int from = rowStart[b], to = rowStart[b + 1];
+                if (wideCol[b] != null) {
+                    cols = wideCol[b];
+                    costs = wideCost[b];
+                    from = 0;
+                    to = cols.length;
+                }
+                for (int e = from; e < to; e++) {
+                    int j = cols[e];
+                    if (blocked[j]) continue;
+                    double value = -costs[e] - price[j];
+                    if (value > best) {
+                        second = best;
+                        best = value;
+                        bestObject = j;
+                    } else if (value > second) {
+                        second = value;
+                    }
+                }
+            } else {
+                // Idle bidder of vehicle j: keep j, or take the cheapest unassigned slot
+                int j = b - n;
+                bestObject = j;
+                best = -price[j];
+                second = Double.NEGATIVE_INFINITY;
+                if (n > 0) {
+                    double cheapest = -price[k + slotHeap[0]];
+                    double next = n > 1 ? -price[k + slotHeap[n > 2 && price[k + slotHeap[2]] < price[k + slotHeap[1]] ? 2 : 1]]
+                            : Double.NEGATIVE_INFINITY;
+                    if (cheapest > best) {
+                        second = Math.max(best, next);
+                        best = cheapest;
+                        bestObject = k + slotHeap[0];
+                    } else {
+                        second = cheapest;
+                    }
+                }
+            }
+
+            price[bestObject] += second == Double.NEGATIVE_INFINITY ? eps : best - second + eps;
+            if (bestObject >= k) slotRaised(bestObject - k);
+            int previous = owner[bestObject];
+            owner[bestObject] = b;
+            holds[b] = bestObject;
+            if (previous != NONE) {
+                holds[previous] = NONE;
+                queue.add(previous);
+            }
+        }
+        return true;
+    }
+
+    // A slot's price only goes up, so it can only move down the min-heap
+    private void slotRaised(int slot) {
+        int i = slotPos[slot];
+        while (true) {
+            int smallest = i, left = 2 * i + 1, right = left + 1;
+            if (left < n && price[k + slotHeap[left]] < price[k + slotHeap[smallest]]) smallest = left;
+            if (right < n && price[k + slotHeap[right]] < price[k + slotHeap[smallest]]) smallest = right;
+            if (smallest == i) return;
+            int t = slotHeap[i];
+            slotHeap[i] = slotHeap[smallest];
+            slotHeap[smallest] = t;
+            slotPos[slotHeap[i]] = i;
+            slotPos[slotHeap[smallest]] = smallest;
+            i = smallest;
+        }
+    }
+
+    private static void siftUp(int[] cols, float[] costs, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (costs[parent] >= costs[i]) break;
+            swap(cols, costs, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] cols, float[] costs, int size) {
+        int i = 0;
+        while (true) {
+            int largest = i, left = 2 * i + 1, right = left + 1;
+            if (left < size && costs[left] > costs[largest]) largest = left;
+            if (right < size && costs[right] > costs[largest]) largest = right;
+            if (largest == i) return;
+            swap(cols, costs, i, largest);
+            i = largest;
+        }
+    }
+
+    private static void swap(int[] cols, float[] costs, int a, int b) {
+        int tc = cols[a]; cols[a] = cols[b]; cols[b] = tc;
+        float tx = costs[a]; costs[a] = costs[b]; costs[b] = tx;
+    }
+
+    private static boolean isInMaintenance(Vehicle vehicle) {
+        return vehicle.getStatus() == VehicleStatus.UNDER_MAINTENANCE;
+    }
+
+    // Ring of bidder indexes waiting to bid; a bidder is queued at most once at a time
+    private static final class IntQueue {
+        private int[] items;
+        private int head = 0, size = 0;
+
+        IntQueue(int capacity) { items = new int[Math.max(4, capacity)]; }
+
+        boolean isEmpty() { return size == 0; }
+
+        void add(int value) {
+            if (size == items.length) {
+                int[] grown = new int[items.length * 2];
+                for (int i = 0; i < size; i++) grown[i] = items[(head + i) % items.length];
+                items = grown;
+                head = 0;
+            }
+            items[(head + size++) % items.length] = value;
+        }
+
+        int poll() {
+            int value = items[head];
+            head = (head + 1) % items.length;
+            size--;
+            return value;
+        }
+    }
+}
+
+/**
+ * Fleet registry with enum-keyed indexes for vehicle class, status and fuel.
+ * Buckets are concurrent skip lists ordered by vehicle id, so readers never
+ * block, a status change moves a vehicle between buckets in O(log n), and
+ * pages are read with a cursor (the last id of the previous page) instead of
+ * skipping over an offset.
+ */
+class FleetRegistry {
+    // Vehicles of one index value in id order, counted so sizes stay O(1)
+    private static final class Bucket {
+        final ConcurrentSkipListMap<String, Vehicle> vehicles = new ConcurrentSkipListMap<>();
+        final AtomicInteger size = new AtomicInteger();
+
+        void add(Vehicle v) {
+            if (vehicles.putIfAbsent(v.getVehicleId(), v) == null) size.incrementAndGet();
+        }
+
+        void remove(Vehicle v) {
+            if (vehicles.remove(v.getVehicleId(), v)) size.decrementAndGet();
+        }
+    }
+
+    // One page of vehicles; pass nextCursor as `after` for the next page (null on the last page)
+    public static final class Page {
+        public final List<Vehicle> vehicles;
+        public final String nextCursor;
+
+        Page(List<Vehicle> vehicles, String nextCursor) {
+            this.vehicles = vehicles;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    private final Map<String, Vehicle> byId = new ConcurrentHashMap<>();
+    private final Bucket all = new Bucket();
+    private final EnumMap<VehicleClass, Bucket> byClass = new EnumMap<>(VehicleClass.class);
+    private final EnumMap<VehicleStatus, Bucket> byStatus = new EnumMap<>(VehicleStatus.class);
+    private final EnumMap<FuelType, Bucket> byFuel = new EnumMap<>(FuelType.class);
+
+    public FleetRegistry() {
+        for (VehicleClass c : VehicleClass.values()) byClass.put(c, new Bucket());
+        for (VehicleStatus st : VehicleStatus.values()) byStatus.put(st, new Bucket());
+        for (FuelType f : FuelType.values()) byFuel.put(f, new Bucket());
+    }
+
+    public void register(Vehicle v) {
+        synchronized (v) {
+            if (byId.putIfAbsent(v.getVehicleId(), v) != null) return;
+            v.registry = this;
+            all.add(v);
+            byClass.get(v.getVehicleClass()).add(v);
+            byFuel.get(v.getFuel()).add(v);
+            byStatus.get(v.getStatus()).add(v);
+        }
+    }
+
+    // Called by Vehicle under its own lock
+    void onStatusChanged(Vehicle v, VehicleStatus from, VehicleStatus to) {
+        byStatus.get(to).add(v);
+        byStatus.get(from).remove(v);
+    }
+
+    public Vehicle get(String vehicleId) { return byId.get(vehicleId); }
+    public int size() { return all.size.get(); }
+    public int count(VehicleClass c) { return byClass.get(c).size.get(); }
+    public int count(VehicleStatus st) { return byStatus.get(st).size.get(); }
+    public int count(FuelType f) { return byFuel.get(f).size.get(); }
+
+    public Page byClass(VehicleClass c, String after, int pageSize) {
+        return page(byClass.get(c), null, null, null, after, pageSize);
+    }
+
+    public Page byStatus(VehicleStatus st, String after, int pageSize) {
+        return page(byStatus.get(st), null, null, null, after, pageSize);
+    }
+
+    // Any filter may be null; the smallest matching bucket is scanned, from just after the cursor
+    public Page find(VehicleClass c, VehicleStatus st, FuelType f, String after, int pageSize) {
+        Bucket smallest = all;
+        if (c != null) smallest = byClass.get(c);
+        if (st != null && byStatus.get(st).size.get() < smallest.size.get()) smallest = byStatus.get(st);
+        if (f != null && byFuel.get(f).size.get() < smallest.size.get()) smallest = byFuel.get(f);
+        return page(smallest, c, st, f, after, pageSize);
+    }
+
+    private Page page(Bucket bucket, VehicleClass c, VehicleStatus st, FuelType f, String after, int pageSize) {
+        if (pageSize < 1) throw new IllegalArgumentException("pageSize must be positive");
+        Map<String, Vehicle> from = after == null ? bucket.vehicles : bucket.vehicles.tailMap(after, false);
+        List<Vehicle> result = new ArrayList<>(Math.min(pageSize, 1024));
+        for (Vehicle v : from.values()) {
+            if (c != null && v.getVehicleClass() != c) continue;
+            if (st != null && v.getStatus() != st) continue;
+            if (f != null && v.getFuel() != f) continue;
+            if (result.size() == pageSize) return new Page(result, result.get(pageSize - 1).getVehicleId());
+            result.add(v);
+        }
+        return new Page(result, null);
+    }
+}
+
+/**
+ * Trip telemetry pipeline.
+ * Events are appended to a per-vehicle ring buffer of primitives (no object
+ * per event). A ring is summed per day in one pass when it fills up or when
+ * flush() runs; the sums are taken under the ring's lock, and the vehicle is
+ * updated after that lock is released, once per day in the batch, priced on
+ * the day the events happened. Fleet-wide counters are striped adders, so
+ * producers on different vehicles never share a lock.
+ */
+class TelemetryPipeline {
+    public static int ringCapacity = 1024; // events per vehicle, power of two
+
+    private static class TripRing {
+        final Vehicle vehicle;
+        final double[] km;
+        final double[] fuel;
+        final long[] timeMillis;
+        final int mask;
+        long head = 0; // next event to aggregate
+        long tail = 0; // next free slot
+        long lastEventMillis;
+
+        TripRing(Vehicle vehicle, int capacity) {
+            this.vehicle = vehicle;
+            this.km = new double[capacity];
+            this.fuel = new double[capacity];
+            this.timeMillis = new long[capacity];
+            this.mask = capacity - 1;
+        }
+    }
+
+    // Per-day totals taken out of a ring, applied to the vehicle without the ring's lock
+    private static class Batch {
+        final Vehicle vehicle;
+        long[] days = new long[2];
+        double[] km = new double[2];
+        double[] fuel = new double[2];
+        int count = 0;
+
+        Batch(Vehicle vehicle) { this.vehicle = vehicle; }
+
+        void add(long day, double tripKm, double fuelUsed) {
+            if (count == 0 || days[count - 1] != day) {
+                if (count == days.length) {
+                    days = Arrays.copyOf(days, count * 2);
+                    km = Arrays.copyOf(km, count * 2);
+                    fuel = Arrays.copyOf(fuel, count * 2);
+                }
+                days[count++] = day;
+            }
+            km[count - 1] += tripKm;
+            fuel[count - 1] += fuelUsed;
+        }
+
+        void apply() {
+            for (int i = 0; i < count; i++) vehicle.updateMileage(km[i], fuel[i], -1, days[i]);
+        }
+    }
+
+    private final Map<String, TripRing> rings = new ConcurrentHashMap<>();
+    private final LongAdder events = new LongAdder();
+    private final DoubleAdder fleetKm = new DoubleAdder();
+    private final DoubleAdder fleetFuel = new DoubleAdder();
+
+    public TelemetryPipeline() {
+        if (Integer.bitCount(ringCapacity) != 1) {
+            throw new IllegalStateException("ringCapacity must be a power of two");
+        }
+    }
+
+    public void register(Vehicle v) {
+        rings.putIfAbsent(v.getVehicleId(), new TripRing(v, ringCapacity));
+    }
+
+    public void submit(String vehicleId, double km, double fuelUsed, long timeMillis) {
+        TripRing ring = rings.get(vehicleId);
+        if (ring == null) throw new IllegalArgumentException("Unknown vehicle: " + vehicleId);
+        Batch full = null;
+        synchronized (ring) {
+            if (ring.tail - ring.head == ring.km.length) full = take(ring);
+            int slot = (int) (ring.tail & ring.mask);
+            ring.km[slot] = km;
+            ring.fuel[slot] = fuelUsed;
+            ring.timeMillis[slot] = timeMillis;
+            ring.tail++;
+        }
+        if (full != null) full.apply();
+        events.increment();
+        fleetKm.add(km);
+        fleetFuel.add(fuelUsed);
+    }
+
+    // Aggregates every buffered event into its vehicle
+    public void flush() {
+        for (TripRing ring : rings.values()) {
+            Batch batch;
+            synchronized (ring) {
+                batch = take(ring);
+            }
+            if (batch != null) batch.apply();
+        }
+    }
+
+    public long getEventCount() { return events.sum(); }
+    public double getFleetKm() { return fleetKm.sum(); }
+    public double getFleetFuel() { return fleetFuel.sum(); }
+
+    // Time of the latest event already aggregated, or -1 for an unknown vehicle
+    public long getLastEventMillis(String vehicleId) {
+        TripRing ring = rings.get(vehicleId);
+        if (ring == null) return -1;
+        synchronized (ring) {
+            return ring.lastEventMillis;
+        }
+    }
+
+    // Caller holds the ring's lock. Sums the buffered events per local day and empties the ring.
+    private static Batch take(TripRing ring) {
+        if (ring.head == ring.tail) return null;
+        Batch batch = new Batch(ring.vehicle);
+        long last = ring.lastEventMillis;
+        ZoneId zone = ZoneId.systemDefault();
+        long day = 0, dayStart = 0, dayEnd = 0; // local day of the previous event and its bounds
+        for (long i = ring.head; i < ring.tail; i++) {
+            int slot = (int) (i & ring.mask);
+            long t = ring.timeMillis[slot];
+            if (t < dayStart || t >= dayEnd) { // dates are only built when the day changes
+                LocalDate date = Instant.ofEpochMilli(t).atZone(zone).toLocalDate();
+                day = date.toEpochDay();
+                dayStart = date.atStartOfDay(zone).toInstant().toEpochMilli();
+                dayEnd = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            }
+            batch.add(day, ring.km[slot], ring.fuel[slot]);
+            last = Math.max(last, t);
+        }
+        ring.head = ring.tail;
+        ring.lastEventMillis = last;
+        return batch;
+    }
+}
+
 /**
  * Fleet Management System
  */
 public class Assignment7_YourName {
 
-    // Static method: Fleet utilization
-    public static void getFleetUtilization(Vehicle[] vehicles) {
+    // Static method: Fleet utilization (status counts, then one page of vehicles after the cursor, optionally filtered by status)
+    public static String getFleetUtilization(FleetRegistry registry, VehicleStatus status, String after, int pageSize) {
         System.out.println("\n----- Fleet Utilization Report -----");
-        for (Vehicle v : vehicles) {
+        for (VehicleStatus st : VehicleStatus.values()) {
+            System.out.println(st.label + ": " + registry.count(st) + " of " + registry.size());
+        }
+        FleetRegistry.Page page = registry.find(null, status, null, after, pageSize);
+        for (Vehicle v : page.vehicles) {
             System.out.println(v.getVehicleId() + " (" + v.getVehicleType() + ") - Status: " + v.getCurrentStatus() +
                     ", Mileage: " + v.mileage + ", Fuel Consumed: " + v.getFuelConsumed());
         }
+        return page.nextCursor;
     }
 
     // Static method: Total maintenance cost
@@ -206,22 +1568,131 @@ public class Assignment7_YourName {
     }
 
     // Static method: Vehicles by type
-    public static void getVehiclesByType(Vehicle[] vehicles, String type) {
+    public static String getVehiclesByType(FleetRegistry registry, VehicleClass type, String after, int pageSize) {
         System.out.println("\n----- Vehicles of Type: " + type + " -----");
-        for (Vehicle v : vehicles) {
-            if (v.getVehicleType().equalsIgnoreCase(type)) {
-                System.out.println(v.getVehicleId() + " - " + v.brand + " " + v.model);
-            }
+        FleetRegistry.Page page = registry.byClass(type, after, pageSize);
+        for (Vehicle v : page.vehicles) {
+            System.out.println(v.getVehicleId() + " - " + v.brand + " " + v.model);
         }
+        return page.nextCursor;
     }
 
-    public static void main(String[] args) {
+    // End-to-end benchmarks at full size (main --bench, or ./gradlew benchmarks)
+    static void runBenchmarks() throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        benchmarkTelemetry(10_000, 2_000_000 / cores, 1);
+        benchmarkTelemetry(10_000, 2_000_000 / cores, cores);
+        benchmarkSimulation(10_000_000, 100, 50);
+        benchmarkAssignment(10_000, 10_000);
+    }
+
+    // Benchmark: telemetry events per second across several producer threads, with trips logged
+    public static void benchmarkTelemetry(int vehicleCount, int eventsPerThread, int threads) throws InterruptedException {
+        TripLog previousLog = Vehicle.getTripLog();
+        Vehicle.setTripLog(new TripLog());
+        TelemetryPipeline pipeline = new TelemetryPipeline();
+        String[] ids = new String[vehicleCount];
+        for (int i = 0; i < vehicleCount; i++) {
+            ids[i] = "BV" + i;
+            pipeline.register(new Car(ids[i], "Bench", "Car", 2024, 0, "Petrol", 4));
+        }
+
+        Thread[] producers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            producers[t] = new Thread(() -> {
+                Random rnd = new Random(seed);
+                for (int i = 0; i < eventsPerThread; i++) {
+                    pipeline.submit(ids[rnd.nextInt(vehicleCount)], 0.05, 0.004, i);
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread p : producers) p.start();
+        for (Thread p : producers) p.join();
+        pipeline.flush();
+        long ms = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        Vehicle.setTripLog(previousLog);
+
+        long total = pipeline.getEventCount();
+        System.out.println("Telemetry benchmark: " + total + " events in " + ms + " ms (" +
+                (total * 1000 / ms) + " events/s, " + threads + " threads, " + vehicleCount + " vehicles)");
+    }
+
+    // Benchmark: many scenarios replayed over one synthetic trip dataset
+    public static void benchmarkSimulation(int tripCount, int scenarioCount, int routes) {
+        Random rnd = new Random(3);
+        byte[] cls = new byte[tripCount], ft = new byte[tripCount];
+        double[] km = new double[tripCount], fuel = new double[tripCount];
+        long[] day = new long[tripCount];
+        int[] route = new int[tripCount];
+        long start = LocalDate.now().toEpochDay() - 365;
+        for (int i = 0; i < tripCount; i++) {
+            route[i] = rnd.nextInt(routes);
+            cls[i] = (byte) (route[i] % 3);
+            ft[i] = (byte) (cls[i] == 0 ? FuelType.PETROL.ordinal() : FuelType.DIESEL.ordinal());
+            km[i] = 5 + rnd.nextInt(300);
+            fuel[i] = km[i] / (cls[i] == 0 ? 15 : 4);
+            day[i] = start + rnd.nextInt(365);
+        }
+        TripDataset data = new TripDataset(tripCount, cls, ft, km, fuel, day, route);
+
+        FuelPriceCurve diesel = new FuelPriceCurve(new long[]{start, start + 365}, new double[]{88, 94});
+        List<Scenario> scenarios = new ArrayList<>();
+        for (int s = 0; s < scenarioCount; s++) {
+            CostModel model = Vehicle.getCostModel().withFuelPriceCurve(FuelType.DIESEL, diesel.scaled(1 + s * 0.01));
+            scenarios.add(new Scenario("diesel +" + s + "%", model)
+                    .moveRoute(s % routes, VehicleClass.TRUCK, FuelType.DIESEL, 1.2));
+        }
+
+        SimulationEngine engine = new SimulationEngine(data, Runtime.getRuntime().availableProcessors());
+        long t0 = System.nanoTime();
+        List<ScenarioResult> results = engine.run(scenarios);
+        long ms = (System.nanoTime() - t0) / 1_000_000;
+        engine.shutdown();
+        System.out.println("Simulation benchmark: " + scenarioCount + " scenarios x " + tripCount + " trips in " +
+                ms + " ms (first: " + results.get(0) + ")");
+    }
+
+    // Benchmark: bulk driver assignment with random costs
+    public static void benchmarkAssignment(int driverCount, int vehicleCount) {
+        Random rnd = new Random(11);
+        Driver[] drivers = new Driver[driverCount];
+        for (int i = 0; i < driverCount; i++) drivers[i] = new Driver("BD" + i, "Driver" + i, i % 3 == 0 ? "HMV" : "LMV");
+        Vehicle[] vehicles = new Vehicle[vehicleCount];
+        for (int j = 0; j < vehicleCount; j++) {
+            vehicles[j] = j % 2 == 0 ? new Car("BV" + j, "B", "C", 2022, 0, "Petrol", 4)
+                    : new Truck("BV" + j, "B", "T", 2022, 0, "Diesel", 10);
+        }
+        AssignmentOptimizer opt = new AssignmentOptimizer(drivers, vehicles, (d, v) -> rnd.nextInt(1000));
+
+        long start = System.nanoTime();
+        int[] result = opt.solve();
+        long solveMs = (System.nanoTime() - start) / 1_000_000;
+        start = System.nanoTime();
+        opt.onMaintenance(result[0] >= 0 ? result[0] : 0);
+        long incrementalUs = (System.nanoTime() - start) / 1000;
+
+        int assigned = 0;
+        for (int r : result) if (r >= 0) assigned++;
+        System.out.println("Assignment benchmark (" + driverCount + " x " + vehicleCount + "): solve " + solveMs +
+                " ms, " + assigned + " assigned, maintenance re-plan " + incrementalUs + " us");
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length > 0 && args[0].equals("--bench")) {
+            runBenchmarks();
+            return;
+        }
+
         // Create vehicles
         Car car1 = new Car("V101", "Toyota", "Corolla", 2020, 12000, "Petrol", 5);
         Bus bus1 = new Bus("V102", "Volvo", "9400", 2018, 50000, "Diesel", 45);
         Truck truck1 = new Truck("V103", "Tata", "Prima", 2019, 80000, "Diesel", 20);
 
         Vehicle[] fleet = {car1, bus1, truck1};
+        FleetRegistry registry = new FleetRegistry();
+        for (Vehicle v : fleet) registry.register(v);
 
         // Create drivers
         Driver d1 = new Driver("D201", "Rajesh", "LMV");
@@ -230,21 +1701,40 @@ public class Assignment7_YourName {
         // Assign drivers
         car1.assignDriver(d1);
         truck1.assignDriver(d2);
+        bus1.assignDriver(d1); // rejected: LMV licence
 
-        // Record trips
-        d1.recordTrip(120, 10);
-        d2.recordTrip(300, 50);
+        // Record trips (kept in a trip log for planning)
+        TripLog tripLog = new TripLog();
+        Vehicle.setTripLog(tripLog);
+        d1.recordTrip(120, 10, 1);
+        d2.recordTrip(300, 50, 2);
 
-        // Maintenance check
-        for (Vehicle v : fleet) {
-            if (v.checkServiceDue()) {
-                v.scheduleMaintenance();
-            }
+        // Maintenance check (service history loaded first)
+        long today = LocalDate.now().toEpochDay();
+        bus1.recordService(40000, today - 90);
+        truck1.recordService(70000, today - 120);
+        MaintenanceScheduler scheduler = new MaintenanceScheduler();
+        for (Vehicle v : fleet) scheduler.register(v);
+        for (Vehicle v : scheduler.dueWithin(500, today)) {
+            v.scheduleMaintenance();
         }
 
         // Reports
-        getFleetUtilization(fleet);
+        getFleetUtilization(registry, null, null, 50);
         System.out.println("\nTotal Maintenance Cost: ₹" + calculateTotalMaintenanceCost(fleet));
-        getVehiclesByType(fleet, "Truck");
+        getVehiclesByType(registry, VehicleClass.TRUCK, null, 50);
+
+        // What-if planning over the recorded trips
+        System.out.println("\n----- Scenario Simulation -----");
+        SimulationEngine sim = new SimulationEngine(tripLog.snapshot(), 2);
+        CostModel current = Vehicle.getCostModel();
+        CostModel dieselUp = current.withFuelPriceCurve(FuelType.DIESEL, FuelPriceCurve.flat(90 * 1.15));
+        for (ScenarioResult r : sim.run(Arrays.asList(
+                new Scenario("Current", current),
+                new Scenario("Diesel +15%", dieselUp),
+                new Scenario("Route 1 on trucks", current).moveRoute(1, VehicleClass.TRUCK, FuelType.DIESEL, 1.3)))) {
+            System.out.println(r);
+        }
+        sim.shutdown();
     }
 }
@@ -1,12 +1,274 @@
 // Assignment8_YourName.java
 
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.stream.IntStream;
 
 /**
  * Main class to run the Hospital Management System
  */
 public class Assignment8_YourName {
-    public static void main(String[] args) {
+
+    // Books appointmentCount "next free slot" requests spread over the
+    // specializations, from many threads at once, against doctorCount doctors.
+    public static void benchmarkScheduling(int doctorCount, int appointmentCount) {
+        String[] specs = {"Cardiologist", "Neurologist", "Orthopedic", "Pediatrician", "Dermatologist",
+                "General Physician", "ENT", "Oncologist"};
+        String[] workingDay = new String[24];
+        for (int i = 0; i < workingDay.length; i++) workingDay[i] = SlotScheduler.timeOf(16 + i); // 8:00AM - 7:30PM
+        LocalDate day = LocalDate.of(2025, 9, 1);
+        SlotScheduler scheduler = new SlotScheduler(day, 7, doctorCount);
+        for (int i = 0; i < doctorCount; i++) {
+            scheduler.register(new Doctor("BD" + i, "Doctor" + i, specs[i % specs.length], workingDay, 500));
+        }
+
+        long start = System.nanoTime();
+        long booked = IntStream.range(0, appointmentCount).parallel()
+                .filter(i -> scheduler.claimNextFree(specs[i % specs.length], day, "8:00AM") != null)
+                .count();
+        long ms = (System.nanoTime() - start) / 1_000_000;
+
+        int queries = 10_000;
+        start = System.nanoTime();
+        for (int i = 0; i < queries; i++) scheduler.nextFree(specs[i % specs.length], day, "8:00AM");
+        double queryUs = (System.nanoTime() - start) / 1000.0 / queries;
+
+        System.out.println("Scheduling benchmark: " + booked + " of " + appointmentCount + " booked across " +
+                doctorCount + " doctors in " + ms + " ms; next-free query " + String.format("%.1f", queryUs) + " us");
+    }
+
+    // producers threads submit perProducer appointments each while one thread dispatches
+    public static void benchmarkTriage(int producers, int perProducer) throws InterruptedException {
+        Doctor doctor = new Doctor("TD1", "Dr. Triage", "General Physician", new String[0], 500);
+        Patient patient = new Patient("TP1", "Bench Patient", 40, "Female", "0000000000");
+        String[] types = {"Consultation", "Follow-up", "Consultation", "Emergency"};
+        TriageDispatcher triage = new TriageDispatcher(8, 16);
+        int total = producers * perProducer;
+
+        long start = System.nanoTime();
+        Thread[] threads = new Thread[producers];
+        for (int t = 0; t < producers; t++) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    triage.submit(new Appointment("T" + id + "-" + i, patient, doctor, "2025-09-01", "9:00AM",
+                            types[i & 3]));
+                }
+            });
+            threads[t].start();
+        }
+        int taken = 0;
+        while (taken < total) {
+            if (triage.next() != null) taken++;
+            else Thread.onSpinWait();
+        }
+        for (Thread th : threads) th.join();
+        long ms = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("Triage benchmark: " + total + " appointments from " + producers + " producers in " +
+                ms + " ms (" + (ms == 0 ? total : total / ms) + " per ms)");
+    }
+
+    // patientCount patients with entriesPerPatient history entries each, then last-N and full-timeline reads
+    public static void benchmarkHistory(Path path, int patientCount, int entriesPerPatient) throws IOException {
+        String[] codes = new String[200];
+        for (int i = 0; i < codes.length; i++) codes[i] = "TRT-" + i;
+        long base = Instant.parse("2000-01-01T00:00:00Z").toEpochMilli();
+        long start = System.nanoTime();
+        try (MedicalHistoryStore store = MedicalHistoryStore.open(path)) {
+            for (int e = 0; e < entriesPerPatient; e++) {
+                for (int p = 0; p < patientCount; p++) {
+                    store.append("BP" + p, base + e * 86_400_000L, codes[(p + e) % codes.length], "BD" + (p % 500),
+                            MedicalHistoryStore.Event.STARTED);
+                }
+            }
+        }
+        long writeMs = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        try (MedicalHistoryStore store = MedicalHistoryStore.open(path)) {
+            long openMs = (System.nanoTime() - start) / 1_000_000;
+            Random rnd = new Random(3);
+            int queries = 100_000;
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) store.lastN("BP" + rnd.nextInt(patientCount), 10);
+            double lastNUs = (System.nanoTime() - start) / 1000.0 / queries;
+
+            long[] seen = new long[1];
+            start = System.nanoTime();
+            for (int i = 0; i < 1000; i++) {
+                store.timeline("BP" + rnd.nextInt(patientCount), (time, code, doctorId, event) -> seen[0]++);
+            }
+            double timelineUs = (System.nanoTime() - start) / 1000.0 / 1000;
+
+            System.out.println("History benchmark: " + store.size() + " entries for " + patientCount +
+                    " patients written in " + writeMs + " ms (" + Files.size(path) / (1 << 20) + " MB), reopened in " +
+                    openMs + " ms; last 10 " + String.format("%.1f", lastNUs) + " us, full timeline " +
+                    String.format("%.1f", timelineUs) + " us");
+        }
+    }
+
+    // threads bill concurrently against a few doctors; the totals must come out exact
+    public static void benchmarkMetrics(int threads, int billsPerThread) throws InterruptedException {
+        Doctor[] doctors = new Doctor[4];
+        for (int i = 0; i < doctors.length; i++) doctors[i] = new Doctor("MD" + i, "Metrics" + i, "ENT", new String[0], 100);
+        long revenueBefore = HospitalMetrics.REVENUE.total();
+
+        long start = System.nanoTime();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < billsPerThread; i++) {
+                    Doctor d = doctors[i & 3];
+                    d.incrementPatientsHandled();
+                    HospitalMetrics.recordBill(123.45);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread w : workers) w.join();
+        long ms = (System.nanoTime() - start) / 1_000_000;
+
+        long bills = (long) threads * billsPerThread;
+        long handled = 0;
+        for (Doctor d : doctors) handled += d.getPatientsHandled();
+        long revenue = HospitalMetrics.REVENUE.total() - revenueBefore;
+        System.out.println("Metrics benchmark: " + bills + " bills on " + threads + " threads in " + ms + " ms; " +
+                "handled " + handled + ", revenue exact: " + (revenue == bills * 12345) + ", last 5 min " +
+                HospitalMetrics.rupees(HospitalMetrics.REVENUE.sum(5)));
+    }
+
+    // End-of-day billing of appointmentCount appointments, then the same batch again (must bill nothing)
+    public static void benchmarkBilling(Path log, int appointmentCount) throws IOException {
+        Doctor[] doctors = new Doctor[100];
+        for (int i = 0; i < doctors.length; i++) {
+            doctors[i] = new Doctor("BLD" + i, "Billing" + i, "General Physician", new String[0], 300 + i * 10);
+        }
+        Patient[] patients = new Patient[1000];
+        for (int i = 0; i < patients.length; i++) patients[i] = new Patient("BLP" + i, "Patient" + i, 30, "Male", "0");
+        String[] types = {"Consultation", "Follow-up", "Emergency", "Consultation"};
+        List<Appointment> day = new ArrayList<>(appointmentCount);
+        for (int i = 0; i < appointmentCount; i++) {
+            day.add(new Appointment("BLA" + i, patients[i % patients.length], doctors[i % doctors.length],
+                    "2025-09-01", "9:00AM", types[i & 3]));
+        }
+
+        try (BillingPipeline billing = BillingPipeline.open(log)) {
+            long start = System.nanoTime();
+            int billed = billing.billAll(day);
+            long ms = (System.nanoTime() - start) / 1_000_000;
+            int again = billing.billAll(day);
+            System.out.println("Billing benchmark: " + billed + " invoices in " + ms + " ms (" +
+                    Files.size(log) / (1 << 20) + " MB log); second run billed " + again);
+        }
+        try (BillingPipeline reopened = BillingPipeline.open(log)) {
+            System.out.println("Invoice log reopened with " + reopened.invoiceCount() + " invoices");
+        }
+    }
+
+    // threads book, cancel and complete appointments concurrently; then the indexes are checked and queried
+    public static void benchmarkAppointmentStore(int threads, int perThread) throws InterruptedException {
+        AppointmentStore bench = new AppointmentStore();
+        Appointment.setStore(bench);
+        Doctor[] doctors = new Doctor[1000];
+        for (int i = 0; i < doctors.length; i++) doctors[i] = new Doctor("SD" + i, "Store" + i, "ENT", new String[0], 100);
+        Patient[] patients = new Patient[20_000];
+        for (int i = 0; i < patients.length; i++) patients[i] = new Patient("SP" + i, "Patient" + i, 30, "Male", "0");
+        LocalDate first = LocalDate.of(2025, 9, 1);
+
+        long start = System.nanoTime();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers[t] = new Thread(() -> {
+                Random rnd = new Random(id);
+                for (int i = 0; i < perThread; i++) {
+                    Appointment a = new Appointment("S" + id + "-" + i, patients[rnd.nextInt(patients.length)],
+                            doctors[rnd.nextInt(doctors.length)], first.plusDays(rnd.nextInt(30)).toString(),
+                            SlotScheduler.timeOf(16 + rnd.nextInt(24)), "Consultation");
+                    a.book();
+                    int r = rnd.nextInt(10);
+                    if (r == 0) a.cancel();
+                    else if (r < 4) a.complete();
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread w : workers) w.join();
+        long ms = (System.nanoTime() - start) / 1_000_000;
+        Appointment.setStore(null);
+
+        long handled = 0;
+        for (Doctor d : doctors) handled += d.getPatientsHandled();
+        boolean consistent = handled == bench.count(AppointmentStatus.SCHEDULED) + bench.count(AppointmentStatus.COMPLETED);
+
+        int queries = 100_000;
+        Random rnd = new Random(9);
+        long rows = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            rows += bench.agenda(doctors[rnd.nextInt(doctors.length)], first.plusDays(rnd.nextInt(30))).size();
+            rows += bench.upcoming(patients[rnd.nextInt(patients.length)], first.plusDays(15), 5).size();
+        }
+        double queryUs = (System.nanoTime() - start) / 1000.0 / queries;
+        System.out.println("Appointment store benchmark: " + bench.size() + " appointments from " + threads +
+                " threads in " + ms + " ms; patientsHandled consistent: " + consistent + "; agenda + upcoming " +
+                String.format("%.1f", queryUs) + " us (" + rows + " rows)");
+    }
+
+    // End-to-end benchmarks at full size (main --bench, or ./gradlew benchmarks)
+    static void runBenchmarks() throws IOException, InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        benchmarkScheduling(10_000, 1_000_000);
+        benchmarkTriage(Math.max(2, cores), 1_000_000);
+        benchmarkMetrics(cores, 10_000_000 / cores);
+        benchmarkAppointmentStore(cores, 1_000_000 / cores);
+
+        Path historyFile = Paths.get(System.getProperty("java.io.tmpdir"), "citycare-bench-history.bin");
+        Path invoiceLog = Paths.get(System.getProperty("java.io.tmpdir"), "citycare-bench-invoices.csv");
+        deleteHistoryFiles(historyFile);
+        Files.deleteIfExists(invoiceLog);
+        try {
+            benchmarkHistory(historyFile, 100_000, 100);
+            benchmarkBilling(invoiceLog, 10_000_000);
+        } finally {
+            deleteHistoryFiles(historyFile);
+            Files.deleteIfExists(invoiceLog);
+        }
+    }
+
+    // The history store keeps its dictionaries next to the entry file
+    private static void deleteHistoryFiles(Path path) throws IOException {
+        for (String suffix : new String[]{"", ".patients", ".codes", ".doctors"}) {
+            Files.deleteIfExists(path.resolveSibling(path.getFileName() + suffix));
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("--bench")) {
+            runBenchmarks();
+            return;
+        }
+
         // Set hospital name
         Appointment.setHospitalName("CityCare Hospital");
 
@@ -16,6 +278,14 @@ public class Assignment8_YourName {
         Doctor d2 = new Doctor("D102", "Dr. Roy", "Neurologist", 
                 new String[]{"9:30AM", "1:30PM"}, 1200);
 
+        // Slot calendar for the next week
+        SlotScheduler scheduler = new SlotScheduler(LocalDate.of(2025, 9, 1), 7, 100);
+        scheduler.register(d1);
+        scheduler.register(d2);
+        Appointment.setScheduler(scheduler);
+        AppointmentStore store = new AppointmentStore();
+        Appointment.setStore(store);
+
         // Create patients
         Patient p1 = new Patient("P201", "Ramesh Kumar", 45, "Male", "9876543210");
         Patient p2 = new Patient("P202", "Anita Sharma", 30, "Female", "9123456780");
@@ -27,25 +297,125 @@ public class Assignment8_YourName {
         a1.scheduleAppointment();
         a2.scheduleAppointment();
 
-        // Treatments
-        p1.updateTreatment("Blood Pressure Monitoring");
-        p2.updateTreatment("MRI Scan");
+        // Same doctor, same slot: refused
+        Patient p3 = new Patient("P203", "Suresh Iyer", 52, "Male", "9988776655");
+        Appointment a3 = new Appointment("A303", p3, d1, "2025-09-01", "10:00AM", "Consultation");
+        a3.scheduleAppointment();
+
+        SlotScheduler.Slot next = scheduler.nextFree("Cardiologist", LocalDate.of(2025, 9, 1), "10:00AM");
+        System.out.println("Next free Cardiologist slot: " + next);
+
+        // Triage: an emergency takes Dr. Mehta's 11:00AM slot from a follow-up
+        Patient p4 = new Patient("P204", "Kavya Nair", 61, "Female", "9012345678");
+        Patient p5 = new Patient("P205", "Arjun Das", 38, "Male", "9090909090");
+        Appointment a4 = new Appointment("A304", p4, d1, "2025-09-01", "11:00AM", "Follow-up");
+        a4.scheduleAppointment();
+        Appointment a5 = new Appointment("A305", p5, d1, "2025-09-01", "11:00AM", "Emergency");
+        TriageDispatcher triage = new TriageDispatcher(3, 5);
+        triage.submit(a5);
+        while (triage.dispatch() != null) { }
+
+        // Treatments, recorded in the medical history store
+        Path historyFile = Paths.get(System.getProperty("java.io.tmpdir"), "citycare-history.bin");
+        MedicalHistoryStore history = null;
+        try {
+            Files.deleteIfExists(historyFile);
+            history = MedicalHistoryStore.open(historyFile);
+            Patient.setHistoryStore(history);
+        } catch (IOException e) {
+            System.out.println("Medical history store unavailable: " + e.getMessage());
+        }
+        p1.updateTreatment("Blood Pressure Monitoring", d1);
+        p2.updateTreatment("MRI Scan", d2);
 
         // Generate Bills
+        Path invoiceFile = Paths.get(System.getProperty("java.io.tmpdir"), "citycare-invoices.csv");
+        BillingPipeline invoices = null;
+        try {
+            Files.deleteIfExists(invoiceFile);
+            invoices = BillingPipeline.open(invoiceFile);
+            Appointment.setBillingPipeline(invoices);
+        } catch (IOException e) {
+            System.out.println("Invoice log unavailable: " + e.getMessage());
+        }
         a1.generateBill();
         a2.generateBill();
+        a1.generateBill();   // already billed: no second charge
+        if (invoices != null) System.out.println("Invoices in the log: " + invoices.invoiceCount());
+
+        // Cancelling gives the visit back
+        a4.cancelAppointment();
+        a1.completeAppointment();
+        System.out.println("Dr. Mehta's agenda for 2025-09-01: " + store.agenda(d1, LocalDate.of(2025, 9, 1)));
+        System.out.println(p5.getPatientName() + "'s upcoming visits: " + store.upcoming(p5, LocalDate.of(2025, 9, 1), 5));
 
         // Hospital Reports
         Appointment.generateHospitalReport();
+        Appointment.generateHospitalReport(60);
         Appointment.getDoctorUtilization(new Doctor[]{d1, d2});
-        Appointment.getPatientStatistics(new Patient[]{p1, p2});
+        Appointment.getDoctorUtilization(new Doctor[]{d1, d2}, 60);
+        Appointment.getPatientStatistics(new Patient[]{p1, p2, p3, p4, p5});
 
         // Discharge
         p1.dischargePatient();
         p2.dischargePatient();
+
+        System.out.println("\n---- Medical History: " + p1.getPatientName() + " ----");
+        for (MedicalHistoryStore.Entry e : p1.getRecentHistory(10)) System.out.println(e);
+
+        if (invoices != null) {
+            Appointment.setBillingPipeline(null);
+            try {
+                invoices.close();
+            } catch (IOException e) {
+                System.out.println("Could not close invoice log: " + e.getMessage());
+            }
+        }
+
+        // Closing forces the history chunks and dictionaries to disk
+        if (history != null) {
+            Patient.setHistoryStore(null);
+            try {
+                history.close();
+            } catch (IOException e) {
+                System.out.println("Could not close medical history store: " + e.getMessage());
+            }
+        }
+    }
+}
+
+/**
+ * Appointment types, in triage priority order (most urgent first)
+ */
+enum AppointmentType {
+    EMERGENCY("Emergency", 1500), CONSULTATION("Consultation", 1000), FOLLOW_UP("Follow-up", 700);
+
+    final String label;
+    final int tariffPermille;   // bill = consultation fee * tariffPermille / 1000
+
+    AppointmentType(String label, int tariffPermille) {
+        this.label = label;
+        this.tariffPermille = tariffPermille;
+    }
+
+    // Unknown types are treated as a consultation, as generateBill does
+    static AppointmentType of(String type) {
+        for (AppointmentType t : values()) if (t.label.equalsIgnoreCase(type)) return t;
+        return CONSULTATION;
     }
 }
 
+/**
+ * Appointment status, with the label shown in reports
+ */
+enum AppointmentStatus {
+    SCHEDULED("Scheduled"), COMPLETED("Completed"), CANCELLED("Cancelled");
+
+    final String label;
+
+    AppointmentStatus(String label) { this.label = label; }
+}
+
 /**
  * Patient class
  */
@@ -58,7 +428,7 @@ class Patient {
     private List<String> medicalHistory;
     private List<String> currentTreatments;
 
-    private static int totalPatients = 0;
+    private static MedicalHistoryStore historyStore;   // optional; replaces medicalHistory when set
 
     public Patient(String patientId, String patientName, int age, String gender, String contactInfo) {
         this.patientId = patientId;
@@ -68,22 +438,50 @@ class Patient {
         this.contactInfo = contactInfo;
         this.medicalHistory = new ArrayList<>();
         this.currentTreatments = new ArrayList<>();
-        totalPatients++;
+        HospitalMetrics.PATIENTS.increment();
     }
 
     public void updateTreatment(String treatment) {
+        updateTreatment(treatment, null);
+    }
+
+    public void updateTreatment(String treatment, Doctor doctor) {
         currentTreatments.add(treatment);
+        if (historyStore != null) {
+            historyStore.append(patientId, System.currentTimeMillis(), treatment,
+                    doctor == null ? "" : doctor.getDoctorId(), MedicalHistoryStore.Event.STARTED);
+        }
         System.out.println("Treatment '" + treatment + "' added for patient: " + patientName);
     }
 
     public void dischargePatient() {
         System.out.println("Patient " + patientName + " has been discharged.");
-        medicalHistory.addAll(currentTreatments);
+        if (historyStore != null) {
+            long now = System.currentTimeMillis();
+            for (String t : currentTreatments) {
+                historyStore.append(patientId, now, t, "", MedicalHistoryStore.Event.DISCHARGED);
+            }
+        } else {
+            medicalHistory.addAll(currentTreatments);
+        }
         currentTreatments.clear();
     }
 
+    // Newest first; empty when no history store is set
+    public List<MedicalHistoryStore.Entry> getRecentHistory(int n) {
+        return historyStore == null ? new ArrayList<>() : historyStore.lastN(patientId, n);
+    }
+
+    public static void setHistoryStore(MedicalHistoryStore store) {
+        historyStore = store;
+    }
+
+    public String getPatientId() {
+        return patientId;
+    }
+
     public static int getTotalPatients() {
-        return totalPatients;
+        return (int) HospitalMetrics.PATIENTS.total();
     }
 
     public String getPatientName() {
@@ -99,8 +497,9 @@ class Doctor {
     private String doctorName;
     private String specialization;
     private String[] availableSlots;
-    private int patientsHandled;
+    private final LongAdder patientsHandled = new LongAdder();   // recent activity is in HospitalMetrics.DOCTORS
     private double consultationFee;
+    int schedulerIndex = -1;   // set by SlotScheduler.register
 
     public Doctor(String doctorId, String doctorName, String specialization, String[] availableSlots, double consultationFee) {
         this.doctorId = doctorId;
@@ -108,23 +507,54 @@ class Doctor {
         this.specialization = specialization;
         this.availableSlots = availableSlots;
         this.consultationFee = consultationFee;
-        this.patientsHandled = 0;
     }
 
-    public void incrementPatientsHandled() {
-        patientsHandled++;
+    // Counts one visit now and returns the minute it was counted in
+    public long incrementPatientsHandled() {
+        long minute = HospitalMetrics.currentMinute();
+        incrementPatientsHandled(minute);
+        return minute;
+    }
+
+    // Counts one visit in an earlier minute (a visit moved over from another doctor)
+    void incrementPatientsHandled(long minute) {
+        patientsHandled.increment();
+        HospitalMetrics.DOCTORS.add(this, minute, 1);
+    }
+
+    // Takes back a visit counted in `minute`, so the window it was counted in goes down
+    void decrementPatientsHandled(long minute) {
+        patientsHandled.decrement();
+        HospitalMetrics.DOCTORS.add(this, minute, -1);
     }
 
     public String getDoctorName() {
         return doctorName;
     }
 
+    public String getDoctorId() {
+        return doctorId;
+    }
+
+    public String getSpecialization() {
+        return specialization;
+    }
+
+    public String[] getAvailableSlots() {
+        return availableSlots.clone();
+    }
+
     public double getConsultationFee() {
         return consultationFee;
     }
 
     public int getPatientsHandled() {
-        return patientsHandled;
+        return (int) patientsHandled.sum();
+    }
+
+    // Patients handled in the last windowMinutes minutes (rounded out to DoctorActivity buckets)
+    public int getPatientsHandled(int windowMinutes) {
+        return (int) HospitalMetrics.DOCTORS.sum(this, windowMinutes);
     }
 }
 
@@ -138,11 +568,21 @@ class Appointment {
     private String appointmentDate;
     private String appointmentTime;
     private String type;  // Consultation, Follow-up, Emergency
-    private String status;
+    private final AppointmentType appointmentType;
+    private AppointmentStatus status;
+    private boolean booked;     // counted in the doctor's patientsHandled
+    private long countedMinute; // minute the visit was counted in, while booked
+    long storeSeq = -1;         // set by AppointmentStore.add
+    String agendaKey;           // index keys currently held in the store, if any
+    long agendaEntry = -1;
+    long visitEntry = -1;
 
-    private static int totalAppointments = 0;
     private static String hospitalName;
-    private static double totalRevenue = 0;
+    private static SlotScheduler scheduler;   // optional; when set, slots are claimed
+    private static final Map<Long, Appointment> slotHolders = new ConcurrentHashMap<>();
+    private static BillingPipeline billing;   // optional; when set, bills go to the invoice log
+    private static AppointmentStore store;    // optional; when set, appointments are indexed
+    private final AtomicBoolean billed = new AtomicBoolean();
 
     public Appointment(String appointmentId, Patient patient, Doctor doctor, String appointmentDate, String appointmentTime, String type) {
         this.appointmentId = appointmentId;
@@ -151,30 +591,182 @@ class Appointment {
         this.appointmentDate = appointmentDate;
         this.appointmentTime = appointmentTime;
         this.type = type;
-        this.status = "Scheduled";
-        totalAppointments++;
+        this.appointmentType = AppointmentType.of(type);
+        this.status = AppointmentStatus.SCHEDULED;
+        HospitalMetrics.APPOINTMENTS.increment();
     }
 
-    public void scheduleAppointment() {
+    public boolean scheduleAppointment() {
+        if (!book()) {
+            System.out.println("Appointment " + appointmentId + " not scheduled: " + doctor.getDoctorName() +
+                    " is not available at " + appointmentTime + " on " + appointmentDate);
+            return false;
+        }
         System.out.println("Appointment " + appointmentId + " scheduled for " + patient.getPatientName() +
                 " with " + doctor.getDoctorName() + " at " + appointmentTime + " on " + appointmentDate);
-        doctor.incrementPatientsHandled();
+        return true;
+    }
+
+    // scheduleAppointment without the console output
+    synchronized boolean book() {
+        if (booked || status != AppointmentStatus.SCHEDULED) return false;
+        if (scheduler != null && !scheduler.claim(doctor, LocalDate.parse(appointmentDate), appointmentTime)) {
+            return false;
+        }
+        if (scheduler != null) slotHolders.put(slotKey(), this);
+        booked = true;
+        countedMinute = doctor.incrementPatientsHandled();
+        if (store != null) store.add(this);
+        return true;
     }
 
     public void cancelAppointment() {
-        status = "Cancelled";
-        System.out.println("Appointment " + appointmentId + " cancelled.");
+        if (cancel()) System.out.println("Appointment " + appointmentId + " cancelled.");
+    }
+
+    // Frees the slot and takes the visit back off the doctor's count; false if already cancelled
+    synchronized boolean cancel() {
+        if (status == AppointmentStatus.CANCELLED) return false;
+        AppointmentStatus from = status;
+        status = AppointmentStatus.CANCELLED;
+        if (booked) {
+            if (scheduler != null) freeSlot();
+            doctor.decrementPatientsHandled(countedMinute);
+            booked = false;
+        }
+        if (store != null) store.onStatusChanged(this, from);
+        return true;
+    }
+
+    public void completeAppointment() {
+        if (complete()) System.out.println("Appointment " + appointmentId + " completed.");
+    }
+
+    synchronized boolean complete() {
+        if (status != AppointmentStatus.SCHEDULED) return false;
+        status = AppointmentStatus.COMPLETED;
+        if (store != null) store.onStatusChanged(this, AppointmentStatus.SCHEDULED);
+        return true;
+    }
+
+    // Gives up the claimed slot; caller holds this appointment's lock
+    private boolean freeSlot() {
+        slotHolders.remove(slotKey(), this);
+        return scheduler.release(doctor, LocalDate.parse(appointmentDate), appointmentTime);
+    }
+
+    // Pre-emption: gives up slot `contested` and moves to `replacement`, which the caller has
+    // already claimed. Both happen under this appointment's lock, so a concurrent cancel sees
+    // either the old slot or the new one. If this appointment no longer holds `contested`,
+    // the replacement is released and nothing changes.
+    synchronized boolean yieldSlot(long contested, SlotScheduler.Slot replacement) {
+        if (!booked || status != AppointmentStatus.SCHEDULED || slotKey() != contested) {
+            scheduler.release(replacement.doctor, replacement.date, replacement.getTime());
+            return false;
+        }
+        freeSlot();
+        moveTo(replacement);
+        return true;
+    }
+
+    // Moves to a slot already claimed in the scheduler
+    synchronized void moveTo(SlotScheduler.Slot slot) {
+        if (!booked) {
+            countedMinute = doctor.incrementPatientsHandled();
+        }
+        if (slot.doctor != doctor) {
+            doctor.decrementPatientsHandled(countedMinute);
+            slot.doctor.incrementPatientsHandled(countedMinute);
+            doctor = slot.doctor;
+        }
+        appointmentDate = slot.date.toString();
+        appointmentTime = slot.getTime();
+        slotHolders.put(slotKey(), this);
+        if (store != null) {
+            if (booked) store.onMoved(this);
+            else store.add(this);
+        }
+        booked = true;
+        System.out.println("Appointment " + appointmentId + " for " + patient.getPatientName() + " moved to " + slot);
+    }
+
+    private long slotKey() {
+        return scheduler.slotKey(doctor, LocalDate.parse(appointmentDate), appointmentTime);
+    }
+
+    static Appointment holderOf(Doctor d, String date, String time) {
+        return scheduler == null ? null : slotHolders.get(scheduler.slotKey(d, LocalDate.parse(date), time));
+    }
+
+    static SlotScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public String getAppointmentId() { return appointmentId; }
+    public Doctor getDoctor() { return doctor; }
+    public Patient getPatient() { return patient; }
+    public String getAppointmentDate() { return appointmentDate; }
+    public String getAppointmentTime() { return appointmentTime; }
+    public AppointmentType getAppointmentType() { return appointmentType; }
+    public String getStatus() { return status.label; }
+    public AppointmentStatus getAppointmentStatus() { return status; }
+
+    @Override
+    public String toString() {
+        return appointmentId + " " + appointmentTime + " " + appointmentDate + " " + patient.getPatientName() +
+                " with " + doctor.getDoctorName() + " (" + status.label + ")";
+    }
+
+    public static void setStore(AppointmentStore s) {
+        store = s;
     }
 
     public void generateBill() {
-        double billAmount = doctor.getConsultationFee();
-        if (type.equalsIgnoreCase("Emergency")) {
-            billAmount *= 1.5;
-        } else if (type.equalsIgnoreCase("Follow-up")) {
-            billAmount *= 0.7;
+        long paise;
+        if (billing != null) {
+            paise = billing.bill(this);
+        } else {
+            synchronized (this) {
+                paise = status == AppointmentStatus.CANCELLED ? BillingPipeline.NOT_BILLABLE
+                        : markBilled() ? 0 : BillingPipeline.ALREADY_BILLED;
+            }
+            if (paise == 0) {
+                try {
+                    paise = BillingPipeline.amountPaise(this);
+                } catch (RuntimeException e) {
+                    unmarkBilled();
+                    throw e;
+                }
+                HospitalMetrics.recordBills(1, paise);
+            }
+        }
+        if (paise == BillingPipeline.NOT_BILLABLE) {
+            System.out.println("Appointment " + appointmentId + " is cancelled and is not billed.");
+            return;
+        }
+        if (paise < 0) {
+            System.out.println("Appointment " + appointmentId + " is already billed.");
+            return;
         }
-        totalRevenue += billAmount;
-        System.out.println("Bill for Appointment " + appointmentId + ": ₹" + billAmount);
+        System.out.println("Bill for Appointment " + appointmentId + ": ₹" + HospitalMetrics.rupees(paise));
+    }
+
+    // True only for the first caller; a bill is issued at most once per appointment
+    boolean markBilled() {
+        return billed.compareAndSet(false, true);
+    }
+
+    // Gives the claim back when the bill could not be issued, so it can be retried
+    void unmarkBilled() {
+        billed.set(false);
+    }
+
+    public boolean isBilled() {
+        return billed.get();
+    }
+
+    public static void setBillingPipeline(BillingPipeline pipeline) {
+        billing = pipeline;
     }
 
     // Static Methods
@@ -182,12 +774,26 @@ class Appointment {
         hospitalName = name;
     }
 
+    public static void setScheduler(SlotScheduler s) {
+        scheduler = s;
+    }
+
     public static void generateHospitalReport() {
         System.out.println("\n---- Hospital Report ----");
         System.out.println("Hospital: " + hospitalName);
         System.out.println("Total Patients: " + Patient.getTotalPatients());
-        System.out.println("Total Appointments: " + totalAppointments);
-        System.out.println("Total Revenue: ₹" + totalRevenue);
+        System.out.println("Total Appointments: " + HospitalMetrics.APPOINTMENTS.total());
+        System.out.println("Total Revenue: ₹" + HospitalMetrics.rupees(HospitalMetrics.REVENUE.total()));
+    }
+
+    // Same report for the last windowMinutes minutes
+    public static void generateHospitalReport(int windowMinutes) {
+        System.out.println("\n---- Hospital Report (last " + windowMinutes + " min) ----");
+        System.out.println("Hospital: " + hospitalName);
+        System.out.println("New Patients: " + HospitalMetrics.PATIENTS.sum(windowMinutes));
+        System.out.println("Appointments: " + HospitalMetrics.APPOINTMENTS.sum(windowMinutes));
+        System.out.println("Bills: " + HospitalMetrics.BILLS.sum(windowMinutes));
+        System.out.println("Revenue: ₹" + HospitalMetrics.rupees(HospitalMetrics.REVENUE.sum(windowMinutes)));
     }
 
     public static void getDoctorUtilization(Doctor[] doctors) {
@@ -197,8 +803,1262 @@ class Appointment {
         }
     }
 
+    public static void getDoctorUtilization(Doctor[] doctors, int windowMinutes) {
+        System.out.println("\n---- Doctor Utilization (last " + windowMinutes + " min) ----");
+        for (Doctor d : doctors) {
+            System.out.println(d.getDoctorName() + " handled " + d.getPatientsHandled(windowMinutes) + " patients.");
+        }
+    }
+
     public static void getPatientStatistics(Patient[] patients) {
         System.out.println("\n---- Patient Statistics ----");
         System.out.println("Total Registered Patients: " + patients.length);
+        if (store == null) return;
+        LocalDate today = LocalDate.now();
+        int withUpcoming = 0;
+        for (Patient p : patients) if (!store.upcoming(p, today, 1).isEmpty()) withUpcoming++;
+        for (AppointmentStatus st : AppointmentStatus.values()) {
+            System.out.println(st.label + " Appointments: " + store.count(st));
+        }
+        System.out.println("Patients with upcoming visits: " + withUpcoming);
+    }
+}
+
+/**
+ * Counter with an all-time total and a ring of per-minute buckets.
+ * Both are LongAdders, so concurrent updates never retry on a shared word.
+ * A bucket is replaced (one CAS) the first time its slot is used in a new
+ * minute, and sum(window) adds up the buckets still inside the window.
+ */
+class MinuteCounter {
+    private static class Bucket {
+        final long minute;
+        final LongAdder sum = new LongAdder();
+
+        Bucket(long minute) { this.minute = minute; }
+    }
+
+    private final LongAdder total = new LongAdder();
+    private final int ringMinutes;
+    private volatile AtomicReferenceArray<Bucket> ring;   // created on first use
+
+    MinuteCounter(int ringMinutes) {
+        this.ringMinutes = ringMinutes;
+    }
+
+    public void increment() { add(1); }
+
+    public void add(long delta) {
+        total.add(delta);
+        long minute = HospitalMetrics.currentMinute();
+        AtomicReferenceArray<Bucket> r = ring();
+        int idx = (int) (minute % ringMinutes);
+        Bucket b = r.get(idx);
+        while (b == null || b.minute < minute) {
+            Bucket fresh = new Bucket(minute);
+            if (r.compareAndSet(idx, b, fresh)) {
+                b = fresh;
+                break;
+            }
+            b = r.get(idx);
+        }
+        b.sum.add(delta);   // a bucket that already rolled past this minute keeps the late update
+    }
+
+    public long total() { return total.sum(); }
+
+    // Sum over the last windowMinutes minutes, including the current one; visits only those buckets
+    public long sum(int windowMinutes) {
+        AtomicReferenceArray<Bucket> r = ring;
+        if (r == null) return 0;
+        long now = HospitalMetrics.currentMinute();
+        long sum = 0;
+        for (long m = now - Math.min(windowMinutes, ringMinutes) + 1; m <= now; m++) {
+            Bucket b = r.get((int) (m % ringMinutes));
+            if (b != null && b.minute == m) sum += b.sum.sum();
+        }
+        return sum;
+    }
+
+    private AtomicReferenceArray<Bucket> ring() {
+        AtomicReferenceArray<Bucket> r = ring;
+        if (r == null) {
+            synchronized (this) {
+                if (ring == null) ring = new AtomicReferenceArray<>(ringMinutes);
+                r = ring;
+            }
+        }
+        return r;
+    }
+}
+
+/**
+ * Recent patients handled, for all doctors in one structure.
+ * Time is cut into BUCKET_MINUTES buckets held in a single ring shared by
+ * every doctor; a bucket only has counters for doctors that had a visit
+ * counted in it, so memory follows activity rather than doctors x minutes.
+ * A bucket is replaced (one CAS) when its slot is first used for a newer
+ * bucket. A window query looks the doctor up in the window's buckets only,
+ * with the window rounded out to whole buckets.
+ */
+class DoctorActivity {
+    static final int BUCKET_MINUTES = 15;
+
+    private static class Bucket {
+        final long index;   // minute / BUCKET_MINUTES
+        final Map<Doctor, LongAdder> counts = new ConcurrentHashMap<>();
+
+        Bucket(long index) { this.index = index; }
+    }
+
+    private final AtomicReferenceArray<Bucket> ring;
+
+    DoctorActivity(int windowMinutes) {
+        ring = new AtomicReferenceArray<>(windowMinutes / BUCKET_MINUTES + 1);
+    }
+
+    // Adds delta to the doctor's count in the bucket of `minute`; dropped once that bucket left the ring
+    void add(Doctor d, long minute, long delta) {
+        long index = minute / BUCKET_MINUTES;
+        int slot = (int) (index % ring.length());
+        Bucket b = ring.get(slot);
+        while (b == null || b.index < index) {
+            Bucket fresh = new Bucket(index);
+            if (ring.compareAndSet(slot, b, fresh)) {
+                b = fresh;
+                break;
+            }
+            b = ring.get(slot);
+        }
+        if (b.index != index) return;   // older than anything a window can still see
+        b.counts.computeIfAbsent(d, k -> new LongAdder()).add(delta);
+    }
+
+    // The doctor's count over the last windowMinutes minutes, including the current bucket
+    long sum(Doctor d, int windowMinutes) {
+        long now = HospitalMetrics.currentMinute() / BUCKET_MINUTES;
+        long buckets = Math.min((windowMinutes + BUCKET_MINUTES - 1) / BUCKET_MINUTES, ring.length());
+        long sum = 0;
+        for (long index = now - buckets + 1; index <= now; index++) {
+            Bucket b = ring.get((int) (index % ring.length()));
+            if (b == null || b.index != index) continue;
+            LongAdder c = b.counts.get(d);
+            if (c != null) sum += c.sum();
+        }
+        return sum;
+    }
+}
+
+/**
+ * Hospital-wide counters. Revenue is kept in paise (fixed point) so striped
+ * additions are exact and order-independent.
+ */
+class HospitalMetrics {
+    static final int HOSPITAL_WINDOW_MINUTES = 24 * 60;
+    static final int DOCTOR_WINDOW_MINUTES = 24 * 60;
+
+    public static final MinuteCounter PATIENTS = new MinuteCounter(HOSPITAL_WINDOW_MINUTES);
+    public static final MinuteCounter APPOINTMENTS = new MinuteCounter(HOSPITAL_WINDOW_MINUTES);
+    public static final MinuteCounter BILLS = new MinuteCounter(HOSPITAL_WINDOW_MINUTES);
+    public static final MinuteCounter REVENUE = new MinuteCounter(HOSPITAL_WINDOW_MINUTES);   // paise
+    public static final DoctorActivity DOCTORS = new DoctorActivity(DOCTOR_WINDOW_MINUTES);
+
+    private static volatile LongSupplier clock = System::currentTimeMillis;
+
+    private HospitalMetrics() { }
+
+    public static void recordBill(double amount) {
+        recordBills(1, toPaise(amount));
+    }
+
+    public static void recordBills(long count, long paise) {
+        BILLS.add(count);
+        REVENUE.add(paise);
+    }
+
+    public static long toPaise(double rupees) {
+        return Math.round(rupees * 100);
+    }
+
+    public static String rupees(long paise) {
+        return paise % 100 == 0 ? (paise / 100) + ".0" : String.format("%.2f", paise / 100.0);
+    }
+
+    static long currentMinute() {
+        return clock.getAsLong() / 60_000;
+    }
+
+    // For replaying or testing with a different time source
+    public static void setClock(LongSupplier millis) {
+        clock = millis;
+    }
+}
+
+/**
+ * Doctor slot calendar.
+ * A day is cut into 30-minute slots, so one day of one doctor is a single
+ * long: bit i set means slot i is booked. A slot is claimed with one CAS on
+ * that word, so two patients can never hold the same slot and no locks are
+ * taken. The slots listed in Doctor.availableSlots form the doctor's
+ * working mask; everything outside it is never handed out.
+ * For "next free slot for a specialization" each specialization keeps a
+ * count of free doctors per (day, slot). A query skips slots whose count is
+ * zero and only then scans that specialization's doctors.
+ */
+class SlotScheduler {
+    static final int SLOT_MINUTES = 30;
+    static final int SLOTS_PER_DAY = 24 * 60 / SLOT_MINUTES;
+
+    /**
+     * A claimed or free slot of one doctor
+     */
+    static class Slot {
+        final Doctor doctor;
+        final LocalDate date;
+        final int slot;
+
+        Slot(Doctor doctor, LocalDate date, int slot) {
+            this.doctor = doctor;
+            this.date = date;
+            this.slot = slot;
+        }
+
+        public String getTime() { return timeOf(slot); }
+
+        @Override
+        public String toString() {
+            return doctor.getDoctorName() + " at " + getTime() + " on " + date;
+        }
+    }
+
+    private static class Specialization {
+        volatile int[] doctors = new int[0];   // copy-on-write, registration is rare
+        final AtomicIntegerArray free;         // free doctors per (day, slot)
+
+        Specialization(int horizonDays) {
+            free = new AtomicIntegerArray(horizonDays * SLOTS_PER_DAY);
+        }
+    }
+
+    private final LocalDate firstDay;
+    private final int horizonDays;
+    private final Doctor[] doctors;
+    private final long[] workingMask;
+    private final Specialization[] specOf;
+    private final AtomicLongArray booked;      // [doctor * horizonDays + day]
+    private final Map<String, Specialization> bySpecialization = new ConcurrentHashMap<>();
+    private int doctorCount = 0;
+
+    public SlotScheduler(LocalDate firstDay, int horizonDays, int maxDoctors) {
+        this.firstDay = firstDay;
+        this.horizonDays = horizonDays;
+        this.doctors = new Doctor[maxDoctors];
+        this.workingMask = new long[maxDoctors];
+        this.specOf = new Specialization[maxDoctors];
+        this.booked = new AtomicLongArray(maxDoctors * horizonDays);
+    }
+
+    public synchronized void register(Doctor d) {
+        if (d.schedulerIndex >= 0) return;
+        if (doctorCount == doctors.length) throw new IllegalStateException("Scheduler is full");
+        long mask = 0;
+        for (String t : d.getAvailableSlots()) mask |= 1L << slotOf(t);
+
+        int idx = doctorCount++;
+        doctors[idx] = d;
+        workingMask[idx] = mask;
+        Specialization spec = bySpecialization.computeIfAbsent(key(d.getSpecialization()),
+                k -> new Specialization(horizonDays));
+        specOf[idx] = spec;
+        for (int day = 0; day < horizonDays; day++) {
+            for (int slot = 0; slot < SLOTS_PER_DAY; slot++) {
+                if ((mask & (1L << slot)) != 0) spec.free.incrementAndGet(day * SLOTS_PER_DAY + slot);
+            }
+        }
+        int[] list = Arrays.copyOf(spec.doctors, spec.doctors.length + 1);
+        list[list.length - 1] = idx;
+        spec.doctors = list;
+        d.schedulerIndex = idx;
+    }
+
+    // Claims one slot of one doctor; false if taken, outside working hours or the horizon
+    public boolean claim(Doctor d, LocalDate date, String time) {
+        int day = dayOf(date);
+        return d.schedulerIndex >= 0 && day >= 0 && claim(d.schedulerIndex, day, slotOf(time));
+    }
+
+    public boolean release(Doctor d, LocalDate date, String time) {
+        int day = dayOf(date);
+        if (d.schedulerIndex < 0 || day < 0) return false;
+        int idx = d.schedulerIndex;
+        long bit = 1L << slotOf(time);
+        int cell = idx * horizonDays + day;
+        while (true) {
+            long w = booked.get(cell);
+            if ((w & bit) == 0) return false;
+            if (booked.compareAndSet(cell, w, w & ~bit)) {
+                specOf[idx].free.incrementAndGet(day * SLOTS_PER_DAY + Long.numberOfTrailingZeros(bit));
+                return true;
+            }
+        }
+    }
+
+    public boolean isFree(Doctor d, LocalDate date, String time) {
+        int day = dayOf(date);
+        if (d.schedulerIndex < 0 || day < 0) return false;
+        long bit = 1L << slotOf(time);
+        return (workingMask[d.schedulerIndex] & bit) != 0
+                && (booked.get(d.schedulerIndex * horizonDays + day) & bit) == 0;
+    }
+
+    // Unique id of one doctor's slot on one day, or -1 if outside the calendar
+    public long slotKey(Doctor d, LocalDate date, String time) {
+        int day = dayOf(date);
+        if (d.schedulerIndex < 0 || day < 0) return -1;
+        return ((long) d.schedulerIndex * horizonDays + day) * SLOTS_PER_DAY + slotOf(time);
+    }
+
+    // Earliest free slot at or after (date, time) among doctors of the specialization; does not claim it
+    public Slot nextFree(String specialization, LocalDate date, String time) {
+        return search(specialization, date, time, false);
+    }
+
+    // Same as nextFree, but claims the slot it finds
+    public Slot claimNextFree(String specialization, LocalDate date, String time) {
+        return search(specialization, date, time, true);
+    }
+
+    private Slot search(String specialization, LocalDate date, String time, boolean claim) {
+        Specialization spec = bySpecialization.get(key(specialization));
+        int startDay = dayOf(date);
+        if (spec == null || startDay < 0) return null;
+        int[] list = spec.doctors;
+        int n = list.length;
+        int startSlot = slotOf(time);
+        for (int day = startDay; day < horizonDays; day++) {
+            for (int slot = day == startDay ? startSlot : 0; slot < SLOTS_PER_DAY; slot++) {
+                if (spec.free.get(day * SLOTS_PER_DAY + slot) <= 0) continue;
+                long bit = 1L << slot;
+                // Claimers start at a random doctor so concurrent requests spread out
+                int offset = claim && n > 1 ? ThreadLocalRandom.current().nextInt(n) : 0;
+                for (int k = 0; k < n; k++) {
+                    int idx = list[(offset + k) % n];
+                    if ((workingMask[idx] & bit) == 0) continue;
+                    if ((booked.get(idx * horizonDays + day) & bit) != 0) continue;
+                    if (!claim || claim(idx, day, slot)) return new Slot(doctors[idx], firstDay.plusDays(day), slot);
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean claim(int idx, int day, int slot) {
+        long bit = 1L << slot;
+        if ((workingMask[idx] & bit) == 0) return false;
+        int cell = idx * horizonDays + day;
+        while (true) {
+            long w = booked.get(cell);
+            if ((w & bit) != 0) return false;
+            if (booked.compareAndSet(cell, w, w | bit)) {
+                specOf[idx].free.decrementAndGet(day * SLOTS_PER_DAY + slot);
+                return true;
+            }
+        }
+    }
+
+    private int dayOf(LocalDate date) {
+        long day = date.toEpochDay() - firstDay.toEpochDay();
+        return day >= 0 && day < horizonDays ? (int) day : -1;
+    }
+
+    private static String key(String specialization) {
+        return specialization.trim().toLowerCase();
+    }
+
+    // "10:00AM", "1:30PM" -> slot index of the day
+    static int slotOf(String time) {
+        return minuteOfDay(time) / SLOT_MINUTES;
+    }
+
+    // "10:00AM", "1:30PM" -> minutes after midnight
+    static int minuteOfDay(String time) {
+        String t = time.trim().toUpperCase();
+        boolean pm = t.endsWith("PM");
+        if (!pm && !t.endsWith("AM")) throw new IllegalArgumentException("Bad time: " + time);
+        String[] hm = t.substring(0, t.length() - 2).trim().split(":");
+        int hour = Integer.parseInt(hm[0]);
+        int minute = hm.length > 1 ? Integer.parseInt(hm[1]) : 0;
+        if (hour < 1 || hour > 12 || minute < 0 || minute > 59) throw new IllegalArgumentException("Bad time: " + time);
+        return (hour % 12 + (pm ? 12 : 0)) * 60 + minute;
+    }
+
+    static String timeOf(int slot) {
+        int minutes = slot * SLOT_MINUTES;
+        int hour = minutes / 60;
+        int h12 = hour % 12 == 0 ? 12 : hour % 12;
+        return h12 + ":" + String.format("%02d", minutes % 60) + (hour < 12 ? "AM" : "PM");
+    }
+}
+
+/**
+ * Emergency triage dispatcher.
+ * One lock-free FIFO queue per AppointmentType. Producers only append, so any
+ * number of threads can submit without blocking each other. Emergencies always
+ * go first. Below them, dispatch takes the most urgent queue with aging: once
+ * a consultation or follow-up has been passed over for its level's limit of
+ * dispatches, it goes ahead of the other non-emergency levels. Queues are
+ * FIFO, so only the head of each one needs checking.
+ * When an emergency's slot is held by a non-emergency appointment, that
+ * appointment's next free slot in the same specialization is claimed first and
+ * then it is moved there, so it is never left without a slot. Anything else
+ * whose slot is taken is moved the same way.
+ */
+class TriageDispatcher {
+    private static class Ticket {
+        final Appointment appointment;
+        final long enqueuedAt;   // dispatch count when submitted
+
+        Ticket(Appointment appointment, long enqueuedAt) {
+            this.appointment = appointment;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private static class Level {
+        final ConcurrentLinkedQueue<Ticket> queue = new ConcurrentLinkedQueue<>();
+        final long maxWait;
+
+        Level(long maxWait) { this.maxWait = maxWait; }
+    }
+
+    private final Level[] levels = new Level[AppointmentType.values().length];
+    private final AtomicLong dispatched = new AtomicLong();
+    private final LongAdder preempted = new LongAdder();
+    private final LongAdder rescheduled = new LongAdder();
+
+    // Aging limits in dispatches: a consultation waits at most consultationMaxWait
+    // dispatches, a follow-up at most followUpMaxWait
+    public TriageDispatcher(long consultationMaxWait, long followUpMaxWait) {
+        levels[AppointmentType.EMERGENCY.ordinal()] = new Level(0);
+        levels[AppointmentType.CONSULTATION.ordinal()] = new Level(consultationMaxWait);
+        levels[AppointmentType.FOLLOW_UP.ordinal()] = new Level(followUpMaxWait);
+    }
+
+    public void submit(Appointment a) {
+        levels[a.getAppointmentType().ordinal()].queue.add(new Ticket(a, dispatched.get()));
+    }
+
+    // Next appointment to handle, or null if all queues are empty
+    public Appointment next() {
+        Ticket t = levels[AppointmentType.EMERGENCY.ordinal()].queue.poll();
+        if (t == null) t = nextNonEmergency();
+        if (t == null) return null;
+        dispatched.incrementAndGet();
+        return t.appointment;
+    }
+
+    private Ticket nextNonEmergency() {
+        long now = dispatched.get();
+        // Aged appointments first; the one that overran its limit most wins
+        Level aged = null;
+        long worst = 0;
+        for (int i = 0; i < levels.length; i++) {
+            if (i == AppointmentType.EMERGENCY.ordinal()) continue;
+            Ticket head = levels[i].queue.peek();
+            if (head == null) continue;
+            long over = now - head.enqueuedAt - levels[i].maxWait;
+            if (over >= 0 && (aged == null || over > worst)) {
+                aged = levels[i];
+                worst = over;
+            }
+        }
+        Ticket t = aged != null ? aged.queue.poll() : null;
+        for (int i = 0; t == null && i < levels.length; i++) t = levels[i].queue.poll();
+        return t;
+    }
+
+    // Takes the next appointment and books it, pre-empting or rescheduling as needed
+    public Appointment dispatch() {
+        Appointment a = next();
+        if (a == null) return null;
+        SlotScheduler scheduler = Appointment.getScheduler();
+        if (a.scheduleAppointment() || scheduler == null) return a;
+
+        if (a.getAppointmentType() == AppointmentType.EMERGENCY) {
+            long contested = scheduler.slotKey(a.getDoctor(), LocalDate.parse(a.getAppointmentDate()),
+                    a.getAppointmentTime());
+            Appointment holder = Appointment.holderOf(a.getDoctor(), a.getAppointmentDate(), a.getAppointmentTime());
+            if (holder != null && holder.getAppointmentType() != AppointmentType.EMERGENCY) {
+                SlotScheduler.Slot replacement = scheduler.claimNextFree(holder.getDoctor().getSpecialization(),
+                        LocalDate.parse(holder.getAppointmentDate()), holder.getAppointmentTime());
+                if (replacement != null && holder.yieldSlot(contested, replacement)) {
+                    preempted.increment();
+                    rescheduled.increment();
+                    System.out.println("Emergency " + a.getAppointmentId() + " pre-empted appointment " +
+                            holder.getAppointmentId());
+                    if (!a.scheduleAppointment()) reschedule(scheduler, a);
+                    return a;
+                }
+            }
+        }
+        reschedule(scheduler, a);
+        return a;
+    }
+
+    private void reschedule(SlotScheduler scheduler, Appointment a) {
+        SlotScheduler.Slot slot = scheduler.claimNextFree(a.getDoctor().getSpecialization(),
+                LocalDate.parse(a.getAppointmentDate()), a.getAppointmentTime());
+        if (slot == null) {
+            System.out.println("No free " + a.getDoctor().getSpecialization() + " slot for appointment " +
+                    a.getAppointmentId());
+            return;
+        }
+        rescheduled.increment();
+        a.moveTo(slot);
+    }
+
+    public int pending() {
+        int n = 0;
+        for (Level l : levels) n += l.queue.size();
+        return n;
+    }
+
+    public long getDispatched() { return dispatched.get(); }
+    public long getPreempted() { return preempted.sum(); }
+    public long getRescheduled() { return rescheduled.sum(); }
+}
+
+/**
+ * Append-only medical history store.
+ * Treatment codes, doctor ids and patient ids are interned to ints (each
+ * dictionary is a text file next to the store, one entry per line). Entries
+ * go into fixed 1 KB chunks; each chunk belongs to one patient and holds up to
+ * 59 entries as columns (time, code, doctor, event). Every chunk points back
+ * to the patient's previous chunk, so "last N" reads only the newest chunks
+ * and a full timeline is streamed chunk by chunk.
+ *
+ * Layout (big-endian):
+ *   header page: magic, version (ints), chunk count (long)
+ *   chunk:       patient, count (ints), previous chunk offset (long),
+ *                times[59] (long), codes[59] (int), doctors[59] (int), events[59] (byte)
+ *
+ * The file is memory-mapped in 64 MB segments and grows one segment at a
+ * time. A dictionary is forced to disk before any chunk refers to one of its
+ * new ids. Reopening rebuilds the per-patient chunk chains from chunk headers
+ * and skips chunks whose header was never written (a crash between counting
+ * a chunk and filling it in).
+ */
+class MedicalHistoryStore implements Closeable {
+    public enum Event { STARTED, DISCHARGED }
+
+    public interface Visitor {
+        void onEntry(long timeMillis, String code, String doctorId, Event event);
+    }
+
+    /**
+     * One decoded history entry
+     */
+    static class Entry {
+        final long timeMillis;
+        final String code;
+        final String doctorId;
+        final Event event;
+
+        Entry(long timeMillis, String code, String doctorId, Event event) {
+            this.timeMillis = timeMillis;
+            this.code = code;
+            this.doctorId = doctorId;
+            this.event = event;
+        }
+
+        @Override
+        public String toString() {
+            return Instant.ofEpochMilli(timeMillis) + " " + event + " " + code +
+                    (doctorId.isEmpty() ? "" : " (" + doctorId + ")");
+        }
+    }
+
+    // String <-> int dictionary persisted as an append-only text file
+    private static class Interner implements Closeable {
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private volatile String[] names = new String[16];   // read without locking
+        private int size;
+        private volatile int durable;   // ids below this are forced to disk
+        private final FileChannel file;
+        private final BufferedWriter out;
+
+        Interner(Path path) throws IOException {
+            if (Files.exists(path)) {
+                for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) add(line);
+            }
+            durable = size;
+            file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(file), StandardCharsets.UTF_8));
+        }
+
+        int intern(String name) {
+            Integer id = ids.get(name);
+            if (id != null) return id;
+            synchronized (this) {
+                id = ids.get(name);
+                if (id != null) return id;
+                try {
+                    out.write(name.replace('\n', ' '));
+                    out.newLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not write dictionary", e);
+                }
+                return add(name);
+            }
+        }
+
+        private int add(String name) {
+            String[] n = names;
+            if (size == n.length) n = Arrays.copyOf(n, size * 2);
+            n[size] = name;
+            names = n;   // publish the new slot
+            ids.put(name, size);
+            return size++;
+        }
+
+        String name(int id) { return names[id]; }
+
+        synchronized int size() { return size; }
+
+        // Makes sure `id` is on disk; one force covers every id added before it
+        void sync(int id) {
+            if (id < durable) return;
+            synchronized (this) {
+                if (id < durable) return;
+                try {
+                    out.flush();
+                    file.force(false);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not write dictionary", e);
+                }
+                durable = size;
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.flush();
+            file.force(false);
+            out.close();
+        }
+    }
+
+    // Per-patient write cursor: newest chunk and entry count
+    private static class PatientLog {
+        final int patient;
+        long tail = -1;
+        long count;
+
+        PatientLog(int patient) { this.patient = patient; }
+    }
+
+    private static final int MAGIC = 0x4D485354; // "MHST"
+    private static final int VERSION = 1;
+    static final int CHUNK_BYTES = 1024;
+    static final int CHUNK_ENTRIES = 59;
+    private static final int TIMES = 16;
+    private static final int CODES = TIMES + CHUNK_ENTRIES * 8;
+    private static final int DOCTORS = CODES + CHUNK_ENTRIES * 4;
+    private static final int EVENTS = DOCTORS + CHUNK_ENTRIES * 4;
+    private static final long SEGMENT_BYTES = 64L << 20;
+
+    private final FileChannel channel;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];   // read without locking
+    private final Interner patients;
+    private final Interner codes;
+    private final Interner doctors;
+    private final Map<String, PatientLog> logs = new ConcurrentHashMap<>();
+    private long chunkCount;
+    private final AtomicLong entryCount = new AtomicLong();
+
+    private MedicalHistoryStore(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        patients = new Interner(path.resolveSibling(path.getFileName() + ".patients"));
+        codes = new Interner(path.resolveSibling(path.getFileName() + ".codes"));
+        doctors = new Interner(path.resolveSibling(path.getFileName() + ".doctors"));
+        boolean fresh = channel.size() == 0;
+        mapSegment(0);
+        MappedByteBuffer head = segments[0];
+        if (fresh) {
+            head.putInt(0, MAGIC);
+            head.putInt(4, VERSION);
+            head.putLong(8, 0);
+        } else if (head.getInt(0) != MAGIC || head.getInt(4) != VERSION) {
+            throw new IOException("Not a medical history store (or unsupported version)");
+        }
+        chunkCount = head.getLong(8);
+        while ((long) segments.length * SEGMENT_BYTES < chunkOffset(chunkCount)) mapSegment(segments.length);
+
+        // Rebuild the chunk chains; chunks are in append order. A chunk is counted in the header
+        // before its own header is written, so a crash can leave a zeroed (or half-written) one:
+        // it is kept only if its patient is known, it holds 1..59 entries and it points back to
+        // that patient's previous chunk.
+        int knownPatients = patients.size();
+        for (long c = 0; c < chunkCount; c++) {
+            long off = chunkOffset(c);
+            MappedByteBuffer seg = segmentFor(off);
+            int local = (int) (off % SEGMENT_BYTES);
+            int patient = seg.getInt(local);
+            int used = seg.getInt(local + 4);
+            long prev = seg.getLong(local + 8);
+            if (patient < 0 || patient >= knownPatients || used < 1 || used > CHUNK_ENTRIES) continue;
+            PatientLog log = logs.get(patients.name(patient));
+            if (prev != (log == null ? -1 : log.tail)) continue;
+            if (log == null) {
+                log = new PatientLog(patient);
+                logs.put(patients.name(patient), log);
+            }
+            log.tail = off;
+            log.count += used;
+            entryCount.addAndGet(used);
+        }
+    }
+
+    public static MedicalHistoryStore open(Path path) throws IOException {
+        return new MedicalHistoryStore(path);
+    }
+
+    public void append(String patientId, long timeMillis, String code, String doctorId, Event event) {
+        PatientLog log = logs.computeIfAbsent(patientId, k -> new PatientLog(patients.intern(k)));
+        int codeId = codes.intern(code);
+        int doctorIdx = doctors.intern(doctorId);
+        // New ids reach the dictionaries on disk before a chunk can refer to them
+        patients.sync(log.patient);
+        codes.sync(codeId);
+        doctors.sync(doctorIdx);
+        synchronized (log) {
+            int used = (int) (log.count % CHUNK_ENTRIES);
+            if (log.tail < 0 || used == 0) {
+                long off = allocateChunk();
+                MappedByteBuffer seg = segmentFor(off);
+                int local = (int) (off % SEGMENT_BYTES);
+                seg.putInt(local, log.patient);
+                seg.putInt(local + 4, 0);
+                seg.putLong(local + 8, log.tail);
+                log.tail = off;
+            }
+            MappedByteBuffer seg = segmentFor(log.tail);
+            int local = (int) (log.tail % SEGMENT_BYTES);
+            seg.putLong(local + TIMES + used * 8, timeMillis);
+            seg.putInt(local + CODES + used * 4, codeId);
+            seg.putInt(local + DOCTORS + used * 4, doctorIdx);
+            seg.put(local + EVENTS + used, (byte) event.ordinal());
+            seg.putInt(local + 4, used + 1);   // count last, so a torn write is not visible
+            log.count++;
+        }
+        entryCount.incrementAndGet();
+    }
+
+    // Newest first
+    public List<Entry> lastN(String patientId, int n) {
+        List<Entry> result = new ArrayList<>();
+        PatientLog log = logs.get(patientId);
+        if (log == null) return result;
+        long off;
+        synchronized (log) { off = log.tail; }
+        while (off >= 0 && result.size() < n) {
+            MappedByteBuffer seg = segmentFor(off);
+            int local = (int) (off % SEGMENT_BYTES);
+            for (int i = seg.getInt(local + 4) - 1; i >= 0 && result.size() < n; i--) {
+                result.add(decode(seg, local, i));
+            }
+            off = seg.getLong(local + 8);
+        }
+        return result;
+    }
+
+    // Oldest first; entries are decoded one at a time, never collected
+    public long timeline(String patientId, Visitor visitor) {
+        PatientLog log = logs.get(patientId);
+        if (log == null) return 0;
+        long off;
+        long count;
+        synchronized (log) {
+            off = log.tail;
+            count = log.count;
+        }
+        long[] chain = new long[(int) ((count + CHUNK_ENTRIES - 1) / CHUNK_ENTRIES)];
+        for (int k = chain.length - 1; k >= 0; k--) {
+            chain[k] = off;
+            off = segmentFor(off).getLong((int) (off % SEGMENT_BYTES) + 8);
+        }
+        long seen = 0;
+        for (long c : chain) {
+            MappedByteBuffer seg = segmentFor(c);
+            int local = (int) (c % SEGMENT_BYTES);
+            int used = (int) Math.min(seg.getInt(local + 4), count - seen);
+            for (int i = 0; i < used; i++) {
+                visitor.onEntry(seg.getLong(local + TIMES + i * 8), codes.name(seg.getInt(local + CODES + i * 4)),
+                        doctors.name(seg.getInt(local + DOCTORS + i * 4)), Event.values()[seg.get(local + EVENTS + i)]);
+            }
+            seen += used;
+        }
+        return seen;
+    }
+
+    public long count(String patientId) {
+        PatientLog log = logs.get(patientId);
+        if (log == null) return 0;
+        synchronized (log) { return log.count; }
+    }
+
+    public long size() { return entryCount.get(); }
+
+    private Entry decode(MappedByteBuffer seg, int local, int i) {
+        return new Entry(seg.getLong(local + TIMES + i * 8), codes.name(seg.getInt(local + CODES + i * 4)),
+                doctors.name(seg.getInt(local + DOCTORS + i * 4)), Event.values()[seg.get(local + EVENTS + i)]);
+    }
+
+    private synchronized long allocateChunk() {
+        long off = chunkOffset(chunkCount);
+        int seg = (int) (off / SEGMENT_BYTES);
+        try {
+            while (segments.length <= seg) mapSegment(segments.length);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not grow medical history store", e);
+        }
+        chunkCount++;
+        segments[0].putLong(8, chunkCount);
+        return off;
+    }
+
+    // The header takes the first chunk-sized page
+    private static long chunkOffset(long chunk) {
+        return (chunk + 1) * CHUNK_BYTES;
+    }
+
+    private synchronized void mapSegment(int index) throws IOException {
+        MappedByteBuffer[] grown = Arrays.copyOf(segments, index + 1);
+        grown[index] = channel.map(FileChannel.MapMode.READ_WRITE, index * SEGMENT_BYTES, SEGMENT_BYTES);
+        segments = grown;
+    }
+
+    private MappedByteBuffer segmentFor(long offset) {
+        return segments[(int) (offset / SEGMENT_BYTES)];
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            for (MappedByteBuffer seg : segments) seg.force();
+        }
+        patients.close();
+        codes.close();
+        doctors.close();
+        channel.close();
+    }
+}
+
+/**
+ * Billing pipeline.
+ * Types are resolved to AppointmentType once, so a bill is the consultation
+ * fee in paise times the type's tariff, with no string comparisons. Every
+ * bill is one line in an append-only CSV invoice log:
+ *   appointmentId,patientId,doctorId,type,amountPaise,billedAtMillis
+ * An appointment is billed at most once, and cancelled appointments are not
+ * billed. The claim is a CAS on the appointment, taken together with the
+ * status check under the appointment's lock so it cannot race a cancel, and
+ * ids already in the log (from an earlier run) are skipped. A claim is given
+ * back if the amount or row cannot be computed. A claim only sticks once its row is on
+ * disk: if a write or force fails, the log is cut back to its last durable
+ * row and every claim after it is given back, so those bills can be retried.
+ * Rows are appended under the pipeline's lock, but the force happens outside
+ * it (group commit): one force covers every row appended before it, and
+ * bills arriving meanwhile wait for the next one together.
+ * billAll works in batches: amounts and rows are computed in parallel, then
+ * appended in order and forced to disk before the next batch starts.
+ */
+class BillingPipeline implements Closeable {
+    public static final String HEADER = "appointmentId,patientId,doctorId,type,amountPaise,billedAtMillis\n";
+    public static int batchSize = 50_000;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(128));
+
+    static final long ALREADY_BILLED = -1;
+    static final long NOT_BILLABLE = -2;   // cancelled
+    private static final long CLAIMED = 0;
+
+    private final FileChannel channel;
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+    private final Set<String> logged = ConcurrentHashMap.newKeySet();   // billed in earlier runs
+    private final LongAdder written = new LongAdder();                  // billed in this run
+    private final Object forceLock = new Object();   // one force at a time; taken before `this`
+    private long appended;      // rows appended so far (guarded by this)
+    private long durable;       // rows known to be on disk
+    private long durableSize;   // log size after the last successful force
+    private long lostThrough;   // rows up to here were dropped by a failed write
+
+    private BillingPipeline(FileChannel channel) throws IOException {
+        this.channel = channel;
+        recover();
+        if (channel.size() == 0) {
+            buf.put(HEADER.getBytes(StandardCharsets.UTF_8));
+            drain();
+            channel.force(false);
+        }
+        durableSize = channel.size();
+    }
+
+    public static BillingPipeline open(Path path) throws IOException {
+        return new BillingPipeline(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE));
+    }
+
+    public static long amountPaise(Appointment a) {
+        long fee = HospitalMetrics.toPaise(a.getDoctor().getConsultationFee());
+        return (fee * a.getAppointmentType().tariffPermille + 500) / 1000;
+    }
+
+    // Bills one appointment; returns the amount in paise, ALREADY_BILLED or NOT_BILLABLE
+    public long bill(Appointment a) {
+        long status = claimUnlessCancelled(a);
+        if (status != CLAIMED) return status;
+        long paise;
+        long seq = 0;   // 0 until the row is in the log buffer
+        try {
+            paise = amountPaise(a);
+            byte[] row = render(a, paise, System.currentTimeMillis());
+            synchronized (this) {
+                seq = append(row);
+            }
+            awaitDurable(seq);
+        } catch (IOException e) {
+            a.unmarkBilled();
+            throw new UncheckedIOException("Could not write invoice log", e);
+        } catch (RuntimeException e) {
+            if (seq == 0) a.unmarkBilled();   // no row was written, so the bill can be retried
+            throw e;
+        }
+        written.increment();
+        HospitalMetrics.recordBills(1, paise);
+        return paise;
+    }
+
+    // End-of-day bulk billing; returns how many appointments were billed now
+    public int billAll(List<Appointment> appointments) throws IOException {
+        int billedNow = 0;
+        long now = System.currentTimeMillis();
+        for (int start = 0; start < appointments.size(); start += batchSize) {
+            int end = Math.min(appointments.size(), start + batchSize);
+            final int from = start;
+            byte[][] rows = new byte[end - start][];
+            long[] paise = new long[end - start];
+            AtomicReference<RuntimeException> failure = new AtomicReference<>();
+            IntStream.range(start, end).parallel().forEach(i -> {
+                Appointment a = appointments.get(i);
+                if (claimUnlessCancelled(a) != CLAIMED) return;
+                try {
+                    paise[i - from] = amountPaise(a);
+                    rows[i - from] = render(a, paise[i - from], now);
+                } catch (RuntimeException e) {
+                    a.unmarkBilled();
+                    failure.compareAndSet(null, e);
+                }
+            });
+            if (failure.get() != null) {
+                // Nothing of this batch was appended yet, so every claim in it is given back
+                for (int i = 0; i < rows.length; i++) if (rows[i] != null) appointments.get(from + i).unmarkBilled();
+                throw failure.get();
+            }
+
+            int count = 0;
+            long total = 0;
+            long last = 0;
+            try {
+                synchronized (this) {
+                    for (int i = 0; i < rows.length; i++) {
+                        if (rows[i] == null) continue;
+                        last = append(rows[i]);
+                        count++;
+                        total += paise[i];
+                    }
+                }
+                if (count > 0) awaitDurable(last); // batch is durable before moving on
+            } catch (IOException e) {
+                // The whole batch was appended under one lock, so it is lost as a whole
+                for (int i = 0; i < rows.length; i++) if (rows[i] != null) appointments.get(from + i).unmarkBilled();
+                throw e;
+            }
+            written.add(count);
+            HospitalMetrics.recordBills(count, total);
+            billedNow += count;
+        }
+        return billedNow;
+    }
+
+    // Invoices in the log: recovered from earlier runs plus written by this one
+    public int invoiceCount() {
+        return logged.size() + (int) written.sum();
+    }
+
+    // Caller holds this. Returns the row's sequence number for awaitDurable.
+    private long append(byte[] row) throws IOException {
+        if (buf.remaining() < row.length) {
+            try {
+                drain();
+            } catch (IOException e) {
+                rollBack(e);
+                throw e;
+            }
+        }
+        buf.put(row);
+        return ++appended;
+    }
+
+    // Returns once row `seq` is forced to disk; one force covers every row appended before it
+    private void awaitDurable(long seq) throws IOException {
+        synchronized (forceLock) {
+            long upTo, size;
+            synchronized (this) {
+                if (durable >= seq) return;   // a force by another thread already covered it
+                if (seq <= lostThrough) throw new IOException("Invoice log write failed");
+                try {
+                    drain();
+                } catch (IOException e) {
+                    rollBack(e);
+                    throw e;
+                }
+                upTo = appended;
+                size = channel.position();
+            }
+            try {
+                channel.force(false);   // rows keep being appended meanwhile
+            } catch (IOException e) {
+                synchronized (this) {
+                    rollBack(e);
+                }
+                throw e;
+            }
+            synchronized (this) {
+                durable = upTo;
+                durableSize = size;
+            }
+        }
+    }
+
+    // Caller holds this. Drops every row that is not durable yet; their bills see the failure.
+    private void rollBack(IOException cause) {
+        lostThrough = appended;
+        buf.clear();
+        try {
+            channel.truncate(durableSize);
+            channel.position(durableSize);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    // Checks the status and claims the bill under the appointment's lock, so a concurrent
+    // cancel() lands either before the check (no bill) or after the claim
+    private long claimUnlessCancelled(Appointment a) {
+        synchronized (a) {
+            if (a.getAppointmentStatus() == AppointmentStatus.CANCELLED) return NOT_BILLABLE;
+            return claim(a) ? CLAIMED : ALREADY_BILLED;
+        }
+    }
+
+    private boolean claim(Appointment a) {
+        if (logged.contains(a.getAppointmentId())) {
+            a.markBilled();
+            return false;
+        }
+        return a.markBilled();
+    }
+
+    static byte[] render(Appointment a, long paise, long billedAt) {
+        StringBuilder sb = BUFFER.get();
+        sb.setLength(0);
+        appendField(sb, a.getAppointmentId()).append(',');
+        appendField(sb, a.getPatient().getPatientId()).append(',');
+        appendField(sb, a.getDoctor().getDoctorId()).append(',');
+        sb.append(a.getAppointmentType().label).append(',')
+                .append(paise).append(',')
+                .append(billedAt).append('\n');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static StringBuilder appendField(StringBuilder sb, String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return sb.append(value);
+        }
+        return sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    // Collects the appointment ids already billed and truncates a torn last row
+    private void recover() throws IOException {
+        ByteBuffer in = ByteBuffer.allocateDirect(1 << 16);
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        long pos = 0, lastNewline = -1;
+        boolean header = true;
+        channel.position(0);
+        while (channel.read(in) > 0) {
+            in.flip();
+            while (in.hasRemaining()) {
+                byte b = in.get();
+                if (b == '\n') {
+                    if (!header) logged.add(firstField(line.toString("UTF-8")));
+                    header = false;
+                    line.reset();
+                    lastNewline = pos;
+                } else {
+                    line.write(b);
+                }
+                pos++;
+            }
+            in.clear();
+        }
+        channel.truncate(lastNewline + 1);
+        channel.position(lastNewline + 1);
+    }
+
+    private static String firstField(String row) {
+        if (!row.startsWith("\"")) {
+            int comma = row.indexOf(',');
+            return comma < 0 ? row : row.substring(0, comma);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (c == '"') {
+                if (i + 1 < row.length() && row.charAt(i + 1) == '"') {
+                    sb.append('"');
+                    i++;
+                } else {
+                    break;
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private void drain() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) channel.write(buf);
+        buf.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (forceLock) {
+            synchronized (this) {
+                drain();
+                channel.force(false);
+                channel.close();
+            }
+        }
+    }
+}
+
+/**
+ * Appointment store with secondary indexes.
+ * - by doctor and day: visits that are not cancelled, ordered by time
+ * - by patient: scheduled visits, ordered by date and time
+ * - by status: one concurrent set per AppointmentStatus
+ * Index entries use keys fixed when the entry is written (time plus a
+ * sequence number) and remembered on the appointment, so the ordered maps
+ * never depend on mutable fields.
+ * Appointment keeps its own lock around a transition and calls back here, so
+ * the indexes change together with the status. Different appointments update
+ * the concurrent maps in parallel.
+ */
+class AppointmentStore {
+    private final Map<String, Appointment> byId = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentSkipListMap<Long, Appointment>> byDoctorDay = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentSkipListMap<Long, Appointment>> byPatient = new ConcurrentHashMap<>();
+    private final EnumMap<AppointmentStatus, Set<Appointment>> byStatus = new EnumMap<>(AppointmentStatus.class);
+    private final AtomicLong sequence = new AtomicLong();
+
+    public AppointmentStore() {
+        for (AppointmentStatus st : AppointmentStatus.values()) byStatus.put(st, ConcurrentHashMap.newKeySet());
+    }
+
+    // Called by Appointment under its own lock once it is booked
+    void add(Appointment a) {
+        if (byId.putIfAbsent(a.getAppointmentId(), a) != null) return;
+        a.storeSeq = sequence.getAndIncrement();
+        byStatus.get(a.getAppointmentStatus()).add(a);
+        index(a, a.getDoctor(), a.getAppointmentDate(), a.getAppointmentTime());
+    }
+
+    // Called by Appointment under its own lock
+    void onStatusChanged(Appointment a, AppointmentStatus from) {
+        if (a.storeSeq < 0) return;
+        AppointmentStatus to = a.getAppointmentStatus();
+        // Remove first: an appointment is never listed under two statuses, even for a moment
+        byStatus.get(from).remove(a);
+        byStatus.get(to).add(a);
+        if (from == AppointmentStatus.SCHEDULED) unindexVisit(a);
+        if (to == AppointmentStatus.CANCELLED) unindexAgenda(a);
+    }
+
+    // Called by Appointment under its own lock after a reschedule
+    void onMoved(Appointment a) {
+        if (a.storeSeq < 0) return;
+        unindexAgenda(a);
+        unindexVisit(a);
+        index(a, a.getDoctor(), a.getAppointmentDate(), a.getAppointmentTime());
+    }
+
+    // Doctor's visits on one day (not cancelled), in time order
+    public List<Appointment> agenda(Doctor d, LocalDate date) {
+        ConcurrentSkipListMap<Long, Appointment> day = byDoctorDay.get(doctorDayKey(d, date.toString()));
+        return day == null ? new ArrayList<>() : new ArrayList<>(day.values());
+    }
+
+    // Patient's scheduled visits on or after the given date, earliest first
+    public List<Appointment> upcoming(Patient p, LocalDate from, int limit) {
+        List<Appointment> result = new ArrayList<>();
+        ConcurrentSkipListMap<Long, Appointment> visits = byPatient.get(p.getPatientId());
+        if (visits == null) return result;
+        for (Appointment a : visits.tailMap(from.toEpochDay() * 1440 << 31).values()) {
+            if (result.size() == limit) break;
+            result.add(a);
+        }
+        return result;
+    }
+
+    public Appointment get(String appointmentId) { return byId.get(appointmentId); }
+    public int size() { return byId.size(); }
+    public int count(AppointmentStatus st) { return byStatus.get(st).size(); }
+
+    // The keys are remembered on the appointment, so removal never re-parses dates
+    private void index(Appointment a, Doctor d, String date, String time) {
+        int minute = SlotScheduler.minuteOfDay(time);
+        if (a.getAppointmentStatus() != AppointmentStatus.CANCELLED) {
+            a.agendaKey = doctorDayKey(d, date);
+            a.agendaEntry = ((long) minute << 31) | a.storeSeq;
+            byDoctorDay.computeIfAbsent(a.agendaKey, k -> new ConcurrentSkipListMap<>()).put(a.agendaEntry, a);
+        }
+        if (a.getAppointmentStatus() == AppointmentStatus.SCHEDULED) {
+            a.visitEntry = ((LocalDate.parse(date).toEpochDay() * 1440 + minute) << 31) | a.storeSeq;
+            byPatient.computeIfAbsent(a.getPatient().getPatientId(), k -> new ConcurrentSkipListMap<>())
+                    .put(a.visitEntry, a);
+        }
+    }
+
+    private void unindexAgenda(Appointment a) {
+        if (a.agendaKey == null) return;
+        ConcurrentSkipListMap<Long, Appointment> m = byDoctorDay.get(a.agendaKey);
+        if (m != null) m.remove(a.agendaEntry);
+        a.agendaKey = null;
+    }
+
+    private void unindexVisit(Appointment a) {
+        if (a.visitEntry < 0) return;
+        ConcurrentSkipListMap<Long, Appointment> m = byPatient.get(a.getPatient().getPatientId());
+        if (m != null) m.remove(a.visitEntry);
+        a.visitEntry = -1;
+    }
+
+    private static String doctorDayKey(Doctor d, String date) {
+        return d.getDoctorId() + '@' + date;
     }
 }
@@ -0,0 +1,56 @@
+package assignments;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Assignment 7: Vehicle.updateMileage, spread over the fleet and, in the
+ * contended variant, with every thread on the same vehicle.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class FleetBenchmark {
+    @Param({"10", "1000", "100000", "10000000"})
+    public int size;
+
+    Vehicle[] fleet;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Console.silence();
+        fleet = new Vehicle[size];
+        for (int i = 0; i < size; i++) fleet[i] = new Car("HV" + i, "Bench", "Car", 2022, 0, "Petrol", 5);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public double updateMileage(Cursor c) {
+        return update(fleet[c.next++ % size]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public double updateMileageShared(Cursor c) {
+        return update(fleet[c.next++ % size]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public double updateMileageOneVehicle() {
+        return update(fleet[0]);
+    }
+
+    private static double update(Vehicle v) {
+        v.updateMileage(12.5, 1.0);
+        return v.getMileage();
+    }
+}
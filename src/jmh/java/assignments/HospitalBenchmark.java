@@ -0,0 +1,70 @@
+package assignments;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Assignment 8: Appointment.generateBill. A bill is issued once per
+ * appointment, so each measured shot bills a freshly booked day of `size`
+ * appointments spread over size / 100 doctors. In the shared variant the
+ * threads take appointments from the same day until it is used up.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class HospitalBenchmark {
+    static final String[] TYPES = {"Consultation", "Follow-up", "Emergency", "Consultation"};
+
+    @Param({"10", "1000", "100000", "10000000"})
+    public int size;
+
+    Doctor[] doctors;
+    Patient patient;
+    Appointment[] day;
+    final AtomicInteger next = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Console.silence();
+        doctors = new Doctor[Math.max(1, size / 100)];
+        for (int i = 0; i < doctors.length; i++) {
+            doctors[i] = new Doctor("HD" + i, "Doctor" + i, "General Physician", new String[0], 300 + i % 100 * 10);
+        }
+        patient = new Patient("HP1", "Bench Patient", 40, "Male", "0");
+    }
+
+    @Setup(Level.Iteration)
+    public void book() {
+        day = new Appointment[size];
+        for (int i = 0; i < size; i++) {
+            day[i] = new Appointment("HA" + i, patient, doctors[i % doctors.length], "2025-09-01", "9:00AM",
+                    TYPES[i & 3]);
+        }
+        next.set(0);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int generateBill() {
+        return billRest();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int generateBillShared() {
+        return billRest();
+    }
+
+    private int billRest() {
+        int billed = 0;
+        for (int i; (i = next.getAndIncrement()) < size; ) {
+            day[i].generateBill();
+            if (day[i].isBilled()) billed++;
+        }
+        return billed;
+    }
+}
@@ -0,0 +1,67 @@
+package assignments;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Assignment 5: the ranked, paged catalog search that Member.searchBooks
+ * prints. Queries mix title words, author names, id lookups and two-letter
+ * fragments, so every path through CatalogIndex.search is timed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class LibraryBenchmark {
+    static final String[] WORDS = {"java", "database", "systems", "networks", "algorithms", "design", "compilers",
+            "graphics"};
+
+    @Param({"10", "1000", "100000", "10000000"})
+    public int size;
+
+    CatalogIndex index;
+    String[] keywords;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Console.silence();
+        List<Book> books = new ArrayList<>(size);
+        Random rnd = new Random(42);
+        for (int i = 0; i < size; i++) {
+            String title = WORDS[rnd.nextInt(WORDS.length)] + " " + WORDS[rnd.nextInt(WORDS.length)] + " vol " + i;
+            books.add(new Book("B" + i, title, "Author " + (i % 1000), "ISBN" + i, WORDS[i % WORDS.length]));
+        }
+        index = new CatalogIndex(books);
+        keywords = new String[1024];
+        for (int i = 0; i < keywords.length; i++) {
+            switch (i % 4) {
+                case 0: keywords[i] = WORDS[rnd.nextInt(WORDS.length)]; break;
+                case 1: keywords[i] = "Author " + rnd.nextInt(1000); break;
+                case 2: keywords[i] = "B" + rnd.nextInt(size); break;
+                default: keywords[i] = WORDS[rnd.nextInt(WORDS.length)].substring(0, 2); break;
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public List<Book> searchBooks(Cursor c) {
+        return index.search(keywords[c.next++ & 1023], 0, 10);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public List<Book> searchBooksShared(Cursor c) {
+        return index.search(keywords[c.next++ & 1023], 0, 10);
+    }
+}
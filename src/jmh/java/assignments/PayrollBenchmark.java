@@ -0,0 +1,50 @@
+package assignments;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Assignment 6: Employee.calculateSalary over a month of loaded attendance.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class PayrollBenchmark {
+    @Param({"10", "1000", "100000", "10000000"})
+    public int size;
+
+    Employee[] staff;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Console.silence();
+        int days = Employee.workingDaysPerMonth;
+        long[] fullMonth = {(1L << days) - 1};
+        staff = new Employee[size];
+        for (int i = 0; i < size; i++) {
+            staff[i] = new Employee("E" + i, "Employee " + i, "Dept" + (i % 20), "Engineer", 30000 + i % 50000,
+                    "2024-01-01");
+            staff[i].loadAttendance(0, fullMonth, days - (i % 5));
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public double calculateSalary(Cursor c) {
+        return staff[c.next++ % size].calculateSalary();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public double calculateSalaryShared(Cursor c) {
+        return staff[c.next++ % size].calculateSalary();
+    }
+}
@@ -0,0 +1,72 @@
+package assignments;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Assignment 2: Product.findProductById and ShoppingCart.addProduct.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class ShoppingCartBenchmark {
+    @Param({"10", "1000", "100000", "10000000"})
+    public int size;
+
+    Product[] products;
+    String[] lookups;
+
+    // Each thread fills its own cart, which holds 20 distinct products
+    @State(Scope.Thread)
+    public static class Cart {
+        final ShoppingCart cart = new ShoppingCart("BC", "Bench");
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Console.silence();
+        products = new Product[size];
+        for (int i = 0; i < size; i++) {
+            products[i] = new Product("P" + i, "Item " + i, 10 + i % 100, Product.getCategories()[i % 4],
+                    Integer.MAX_VALUE);
+        }
+        lookups = new String[1024];
+        Random rnd = new Random(7);
+        for (int i = 0; i < lookups.length; i++) lookups[i] = "P" + rnd.nextInt(size);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Product findProductById(Cart c) {
+        return Product.findProductById(products, lookups[c.next++ & 1023]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Product findProductByIdShared(Cart c) {
+        return Product.findProductById(products, lookups[c.next++ & 1023]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int addProduct(Cart c) {
+        return add(c);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int addProductShared(Cart c) {
+        return add(c);
+    }
+
+    private int add(Cart c) {
+        Product p = products[c.next++ % Math.min(size, 20)];
+        c.cart.addProduct(p, 1);
+        return p.getStockQuantity();
+    }
+}
@@ -0,0 +1,71 @@
+package assignments;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Assignment 4: Student.calculateGPA and Student.getTopPerformers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class StudentBenchmark {
+    @Param({"10", "1000", "100000", "10000000"})
+    public int size;
+
+    Student[] students;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Console.silence();
+        String[] subjects = {"Math", "Science", "English", "History", "Art"};
+        students = new Student[size];
+        Random rnd = new Random(5);
+        for (int i = 0; i < size; i++) {
+            students[i] = new Student("Student" + i, "10-A", subjects);
+            for (String sub : subjects) {
+                for (int e = 0; e < 3; e++) students[i].addMarks(sub, 30 + rnd.nextInt(70));
+            }
+            students[i].calculateGPA();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public double calculateGPA(Cursor c) {
+        return gpa(c);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public double calculateGPAShared(Cursor c) {
+        return gpa(c);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Student[] getTopPerformers() {
+        return Student.getTopPerformers(students, 10);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Student[] getTopPerformersShared() {
+        return Student.getTopPerformers(students, 10);
+    }
+
+    private double gpa(Cursor c) {
+        Student s = students[c.next++ % size];
+        s.calculateGPA();
+        return s.getGpa();
+    }
+}
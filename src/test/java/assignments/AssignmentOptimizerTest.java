@@ -0,0 +1,86 @@
+package assignments;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class AssignmentOptimizerTest {
+    private static Vehicle[] cars(int count) {
+        Vehicle[] cars = new Vehicle[count];
+        for (int j = 0; j < count; j++) cars[j] = new Car("V" + j, "Test", "Car", 2022, 0, "Petrol", 5);
+        return cars;
+    }
+
+    private static Driver[] drivers(int count, String licence) {
+        Driver[] drivers = new Driver[count];
+        for (int i = 0; i < count; i++) drivers[i] = new Driver("D" + i, "Driver " + i, licence);
+        return drivers;
+    }
+
+    // Every driver ranks the cars the same way, so all of them keep the same CANDIDATES cars
+    private static double byIndex(Driver d, Vehicle v) {
+        return Integer.parseInt(v.getVehicleId().substring(1));
+    }
+
+    @Test
+    void correlatedCostsStillAssignEveryDriver() {
+        Vehicle[] cars = cars(100);
+        AssignmentOptimizer opt = new AssignmentOptimizer(drivers(100, "LMV"), cars, AssignmentOptimizerTest::byIndex);
+
+        int[] result = opt.solve();
+
+        boolean[] taken = new boolean[cars.length];
+        for (int j : result) {
+            assertTrue(j >= 0, "driver left unassigned while cars were free");
+            assertFalse(taken[j], "car " + j + " assigned twice");
+            taken[j] = true;
+        }
+        assertEquals(99 * 100 / 2, opt.totalCost(result), 1e-9);
+    }
+
+    @Test
+    void moreDriversThanCarsFillsEveryCar() {
+        AssignmentOptimizer opt = new AssignmentOptimizer(drivers(150, "LMV"), cars(100),
+                AssignmentOptimizerTest::byIndex);
+
+        int assigned = 0;
+        for (int j : opt.solve()) {
+            if (j >= 0) assigned++;
+        }
+        assertEquals(100, assigned);
+    }
+
+    @Test
+    void maintenanceReassignsToAFreeCarOutsideThePrunedRow() {
+        Vehicle[] cars = cars(100);
+        AssignmentOptimizer opt = new AssignmentOptimizer(drivers(100, "LMV"), cars, AssignmentOptimizerTest::byIndex);
+        int[] result = opt.solve();
+
+        result = opt.onMaintenance(result[0]);
+
+        int assigned = 0;
+        for (int j : result) {
+            if (j >= 0) assigned++;
+        }
+        assertEquals(99, assigned);
+    }
+
+    @Test
+    void applySkipsCarsThatWentIntoMaintenance() {
+        Vehicle[] cars = cars(2);
+        Driver[] drivers = drivers(2, "LMV");
+        AssignmentOptimizer opt = new AssignmentOptimizer(drivers, cars, AssignmentOptimizerTest::byIndex);
+        int[] result = opt.solve();
+        Vehicle lost = cars[result[0]];
+        lost.scheduleMaintenance();
+
+        assertEquals(1, opt.apply(result));
+        assertNull(drivers[0].getAssignedVehicle());
+        assertSame(cars[result[1]], drivers[1].getAssignedVehicle());
+
+        // The skipped pair is not recorded as applied, so it is bound once the car is serviced
+        lost.recordService(0, 0);
+        assertEquals(1, opt.apply(result));
+        assertSame(lost, drivers[0].getAssignedVehicle());
+    }
+}